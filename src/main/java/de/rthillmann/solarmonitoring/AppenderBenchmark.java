@@ -0,0 +1,107 @@
+package de.rthillmann.solarmonitoring;
+
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.encoder.EchoEncoder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Write-throughput benchmark: GroupCommitFileAppender with the settings of "logback.xml" against FileAppender with
+ * immediateFlush=true as used before for the sample sinks.
+ * Every appender writes the same power-sample lines to its own file in a temporary directory.
+ * <p>
+ * Usage: java -cp SolarMonitoring.jar de.rthillmann.solarmonitoring.AppenderBenchmark [{records} [{flushRecords} [{bufferSize}]]]
+ */
+public class AppenderBenchmark {
+
+	private static final String SAMPLE = "2024-05-30 13:48:25 | Total:    355,034 kWh      933 Wh     51,1 W"
+			+ " | DC-0:    159,815 kWh      465 Wh     26,7 W | DC-1:    195,219 kWh      468 Wh     27,0 W |";
+
+	private static final int ROUNDS = 3;
+
+
+
+	public static void main(String[] args) throws IOException {
+
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int flushRecords = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : 64 * 1024;
+		Path dir = Files.createTempDirectory("appender-benchmark");
+
+		System.out.println("Appender benchmark: " + records + " records of " + (SAMPLE.length() + 1) + " bytes, best of " + ROUNDS
+				+ ", flushRecords " + flushRecords + ", bufferSize " + bufferSize);
+		System.out.println("==========================================================================");
+
+		double fileAppender = 0;
+		double groupCommit = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			fileAppender = Math.max(fileAppender, run(fileAppender(dir.resolve("file-" + round + ".log")), records));
+			groupCommit = Math.max(groupCommit, run(groupCommitAppender(dir.resolve("group-" + round + ".log"), flushRecords, bufferSize), records));
+		}
+
+		System.out.printf("FileAppender (immediateFlush)  : %,12.0f records/s%n", fileAppender);
+		System.out.printf("GroupCommitFileAppender        : %,12.0f records/s%n", groupCommit);
+		System.out.printf("speedup                        : %12.1f x%n", groupCommit / fileAppender);
+	}
+
+
+
+	private static double run(Appender<String> appender, int records) {
+
+		long start = System.nanoTime();
+		for (int i = 0; i < records; i++) {
+			appender.doAppend(SAMPLE);
+		}
+		appender.stop();
+
+		return records / ((System.nanoTime() - start) / 1e9);
+	}
+
+
+
+	private static Appender<String> fileAppender(Path file) {
+
+		ContextBase context = new ContextBase();
+
+		EchoEncoder<String> encoder = new EchoEncoder<>();
+		encoder.setContext(context);
+		encoder.start();
+
+		FileAppender<String> appender = new FileAppender<>();
+		appender.setContext(context);
+		appender.setName("fileAppender");
+		appender.setFile(file.toString());
+		appender.setImmediateFlush(true);
+		appender.setEncoder(encoder);
+		appender.start();
+
+		return appender;
+	}
+
+
+
+	private static Appender<String> groupCommitAppender(Path file, int flushRecords, int bufferSize) {
+
+		ContextBase context = new ContextBase();
+
+		EchoEncoder<String> encoder = new EchoEncoder<>();
+		encoder.setContext(context);
+		encoder.start();
+
+		GroupCommitFileAppender<String> appender = new GroupCommitFileAppender<>();
+		appender.setContext(context);
+		appender.setName("groupCommitAppender");
+		appender.setFile(file.toString());
+		appender.setFlushRecords(flushRecords);
+		appender.setBufferSize(bufferSize);
+		appender.setEncoder(encoder);
+		appender.start();
+
+		return appender;
+	}
+}
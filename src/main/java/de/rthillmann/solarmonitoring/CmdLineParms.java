@@ -0,0 +1,20 @@
+package de.rthillmann.solarmonitoring;
+
+import java.util.List;
+
+/**
+ * Record to hold the parameters from command line
+ *
+ * @param servers          addresses of the OpenDTU-servers (gateways) to poll
+ * @param coordinationDir  shared directory for coordinating several instances or null, if this instance polls all servers
+ * @param instanceId       unique id of this instance used for coordination
+ */
+public record CmdLineParms(List<String> servers, String coordinationDir, String instanceId) {
+
+    /**
+     * @return true, if the servers are shared with other instances
+     */
+    public boolean isCoordinated() {
+        return coordinationDir != null;
+    }
+}
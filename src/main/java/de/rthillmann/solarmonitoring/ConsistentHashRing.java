@@ -0,0 +1,65 @@
+package de.rthillmann.solarmonitoring;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of gateways onto instances.
+ * Every instance is placed with some virtual nodes on a ring, a gateway belongs to the next instance on the ring.
+ * If an instance dies, only its gateways move to other instances.
+ */
+public class ConsistentHashRing {
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+
+    /**
+     * @param instances ids of the live instances
+     */
+    public ConsistentHashRing(Collection<String> instances) {
+
+        for (String instance : instances) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(instance + "#" + i), instance);
+            }
+        }
+    }
+
+
+    /**
+     * @param key the gateway address
+     * @return id of the instance owning the gateway or null, if there are no instances
+     */
+    public String owner(String key) {
+
+        if (ring.isEmpty()) return null;
+
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+
+    private static long hash(String key) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support MD5
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package de.rthillmann.solarmonitoring;
+
+import java.util.function.Consumer;
+
+/**
+ * Decides which gateways (OpenDTU-servers) are polled by this instance of SolarMonitoring.
+ * <p>
+ * Several instances may share one list of gateways, the coordinator makes sure every gateway is polled by exactly one
+ * live instance, so no samples are logged twice.
+ * - LocalGatewayCoordinator      - stand-in for a single instance, which polls all gateways
+ * - LeaseFileGatewayCoordinator  - instances coordinate via lease files in a shared directory
+ */
+public interface GatewayCoordinator {
+
+    /**
+     * Start coordination, e.g. heartbeats.
+     */
+    void start();
+
+    /**
+     * Stop coordination and release all owned gateways.
+     */
+    void stop();
+
+    /**
+     * @param listener called with a gateway, when this instance starts to own it after start() (e.g. a confirmed claim
+     *                 or a takeover), so it can be polled at once instead of with the next scheduled poll
+     */
+    default void setOwnershipListener(Consumer<String> listener) {
+        // all gateways are owned from the start
+    }
+
+    /**
+     * @param gateway the gateway address as given on the command line
+     * @return true, if this instance has to poll the gateway
+     */
+    boolean owns(String gateway);
+}
@@ -0,0 +1,562 @@
+package de.rthillmann.solarmonitoring;
+
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appender for the sample sinks (e.g. PowerLogger), writing through a FileChannel with group commit.
+ * <p>
+ * A FileAppender with immediateFlush=true costs one write-syscall per line. This appender collects the encoded
+ * records in a buffer and writes them with a single call to the FileChannel ("group commit"), when
+ * - flushRecords records are pending, or
+ * - the last commit is older than flushIntervalMillis, or
+ * - the buffer is full, the file is rolled over or the appender is stopped.
+ * A flusher-thread commits pending records every flushIntervalMillis.
+ * <p>
+ * So a record arriving after a quiet period (e.g. one sample per minute) is written at once, like with immediateFlush,
+ * and nothing is lost if the process is killed. Only under load, when records arrive faster than flushIntervalMillis,
+ * at most flushRecords records or flushIntervalMillis milliseconds of data are lost if the process crashes.
+ * The forcePolicy controls, if data is also forced to the storage device (fsync):
+ * - NEVER     - data is handed to the operating system only, as FileAppender with immediateFlush does
+ * - ROLLOVER  - force on rollover and stop
+ * - COMMIT    - force after every group commit
+ * <p>
+ * FileChannel is interruptible: an interrupt of a logging thread would close it. So the interrupt flag is cleared
+ * while writing and restored afterwards, a channel closed by an interrupt anyway is reopened.
+ * <p>
+ * Write errors (e.g. disk full) are reported and the unwritten bytes are kept for the next commit. If the active file
+ * can not be opened after a rollover, records are kept in the buffer and the file is opened again with every record;
+ * records which do not fit into the buffer anymore are dropped with an error.
+ * <p>
+ * With lazy=true the file is not opened before the first record, so sinks which are not needed at startup do not
+ * delay it (see fast-start in "Readme.md").
+ * <p>
+ * If fileNamePattern is set, the file is rolled over daily with the same layout as the TimeBasedRollingPolicy,
+ * e.g. "log/solar_power.%d{yyyy-MM-dd, Etc/GMT-1}.log": the active file is renamed to the file of the previous period.
+ * <p>
+ * Usage in "logback.xml":
+ * <pre>
+ * &lt;appender name="powerAppender" class="de.rthillmann.solarmonitoring.GroupCommitFileAppender"&gt;
+ *     &lt;file&gt;log/solar_power.log&lt;/file&gt;
+ *     &lt;fileNamePattern&gt;log/solar_power.%d{yyyy-MM-dd, Etc/GMT-1}.log&lt;/fileNamePattern&gt;
+ *     &lt;flushRecords&gt;64&lt;/flushRecords&gt;
+ *     &lt;flushIntervalMillis&gt;1000&lt;/flushIntervalMillis&gt;
+ *     &lt;forcePolicy&gt;ROLLOVER&lt;/forcePolicy&gt;
+ *     &lt;encoder&gt;&lt;pattern&gt;%msg%n&lt;/pattern&gt;&lt;/encoder&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ *
+ * @param <E> type of the logged events
+ */
+public class GroupCommitFileAppender<E> extends UnsynchronizedAppenderBase<E> {
+
+	/**
+	 * When to force written data to the storage device.
+	 */
+	public enum ForcePolicy { NEVER, ROLLOVER, COMMIT }
+
+	/**
+	 * Opens the FileChannel of the active file, replaced by tests to simulate a failing file system.
+	 */
+	interface ChannelOpener {
+		FileChannel open(Path path, OpenOption... options) throws IOException;
+	}
+
+	private static final String DATE_TOKEN = "%d{";
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private Encoder<E> encoder;
+	private String file;
+	private String fileNamePattern;
+	private boolean append = true;
+	private int flushRecords = 64;
+	private long flushIntervalMillis = 1000;
+	private int bufferSize = 64 * 1024;
+	private ForcePolicy forcePolicy = ForcePolicy.ROLLOVER;
+	private boolean lazy = false;
+
+	private Clock clock = Clock.systemDefaultZone();
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private int pendingRecords;
+	private long lastCommitMillis;
+	private ScheduledExecutorService flusher;
+
+	private ChannelOpener channelOpener = FileChannel::open;
+
+	private DateTimeFormatter periodFormatter;
+	private String periodPrefix;
+	private String periodSuffix;
+	private String currentPeriod;
+
+
+
+	@Override
+	public void start() {
+
+		if (encoder == null) {
+			addError("No encoder set for the appender named \"" + name + "\".");
+			return;
+		}
+		if (file == null) {
+			addError("No file set for the appender named \"" + name + "\".");
+			return;
+		}
+		if (flushRecords < 1 || flushIntervalMillis < 1 || bufferSize < 1) {
+			addError("flushRecords, flushIntervalMillis and bufferSize must be positive for the appender named \"" + name + "\".");
+			return;
+		}
+
+		if (fileNamePattern != null) {
+			try {
+				parseFileNamePattern(fileNamePattern);
+			} catch (IllegalArgumentException e) {
+				addError("Invalid fileNamePattern for the appender named \"" + name + "\".", e);
+				return;
+			}
+		}
+
+		// allocated once, a lazy appender retries to open its file with every record
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+
+		// a lazy appender opens its file with the first record
+		if (!lazy) {
+			lock.lock();
+			try {
+				if (!open()) return;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		super.start();
+	}
+
+
+
+	/**
+	 * Open the file and start the flusher-thread.
+	 *
+	 * @return true, if the file could be opened
+	 */
+	private boolean open() {
+
+		try {
+			if (periodFormatter != null) {
+				// like TimeBasedRollingPolicy: an existing file belongs to the period it was last modified in
+				File activeFile = new File(file);
+				long lastModified = activeFile.exists() ? activeFile.lastModified() : clock.millis();
+				currentPeriod = periodFormatter.format(Instant.ofEpochMilli(lastModified));
+			}
+
+			openFile(append);
+
+		} catch (IOException e) {
+			addError("Could not open file \"" + file + "\" for the appender named \"" + name + "\".", e);
+			return false;
+		}
+
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "GroupCommitFileAppender-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+		return true;
+	}
+
+
+
+	@Override
+	public void stop() {
+
+		if (!isStarted()) return;
+
+		super.stop();
+
+		lock.lock();
+		try {
+			// a lazy appender may never have been opened
+			if (flusher != null) {
+				// no shutdownNow(): interrupting a running flush would close the channel before the final commit
+				flusher.shutdown();
+			}
+			// records kept after a failed open: last try to write them
+			if (channel == null && flusher != null && buffer.position() > 0) {
+				openFile(true);
+			}
+			if (channel == null) return;
+
+			writeBytes(encoder.footerBytes());
+			commit(forcePolicy != ForcePolicy.NEVER);
+			channel.close();
+		} catch (IOException e) {
+			addError("Could not close file \"" + file + "\".", e);
+		} finally {
+			channel = null;
+			lock.unlock();
+		}
+	}
+
+
+
+	@Override
+	protected void append(E event) {
+
+		byte[] bytes = encoder.encode(event);
+
+		// opening and rolling over use the channel as well, so the interrupt flag is cleared for the whole append
+		boolean interrupted = Thread.interrupted();
+
+		lock.lock();
+		try {
+			// open a lazy appender with the first record
+			if (channel == null && flusher == null && !open()) return;
+
+			if (periodFormatter != null) {
+				String period = periodFormatter.format(clock.instant());
+				if (!period.equals(currentPeriod)) {
+					rollover(period);
+				}
+			}
+
+			// after a rollover or a failed open the file is opened again with every record
+			if (channel == null && !reopen(bytes)) return;
+
+			writeBytes(bytes);
+
+			// group commit only under load, a record after a quiet period is written through at once
+			if (++pendingRecords >= flushRecords || clock.millis() - lastCommitMillis >= flushIntervalMillis) {
+				commit(forcePolicy == ForcePolicy.COMMIT);
+			}
+
+		} catch (IOException e) {
+			addError("Could not write to file \"" + file + "\".", e);
+		} finally {
+			lock.unlock();
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+
+
+	/**
+	 * Write all pending records to the file.
+	 * Called periodically from the flusher-thread, so that records are not delayed longer than flushIntervalMillis.
+	 */
+	public void flush() {
+
+		lock.lock();
+		try {
+			if (channel != null && (pendingRecords > 0 || buffer.position() > 0)) {
+				commit(forcePolicy == ForcePolicy.COMMIT);
+			}
+		} catch (IOException e) {
+			addError("Could not write to file \"" + file + "\".", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+
+	/**
+	 * Put bytes into the buffer. If the buffer is full the pending records are committed first,
+	 * records larger than the buffer are written directly.
+	 */
+	private void writeBytes(byte[] bytes) throws IOException {
+
+		if (bytes == null || bytes.length == 0) return;
+
+		if (bytes.length > buffer.remaining()) {
+			commit(false);
+		}
+
+		if (bytes.length > buffer.capacity()) {
+			writeFully(ByteBuffer.wrap(bytes));
+		} else {
+			buffer.put(bytes);
+		}
+	}
+
+
+
+	/**
+	 * Group commit: write the buffer with one call to the channel and force it if requested.
+	 */
+	private void commit(boolean force) throws IOException {
+
+		buffer.flip();
+		try {
+			writeFully(buffer);
+		} finally {
+			// after a failed write only the unwritten bytes are kept, so the next commit neither loses nor repeats records
+			buffer.compact();
+		}
+		pendingRecords = 0;
+		lastCommitMillis = clock.millis();
+
+		if (force) {
+			boolean interrupted = Thread.interrupted();
+			try {
+				try {
+					channel.force(false);
+				} catch (ClosedByInterruptException e) {
+					interrupted |= Thread.interrupted();
+					reopenChannel();
+					channel.force(false);
+				}
+			} finally {
+				if (interrupted) Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+
+	/**
+	 * Write all bytes to the channel without losing it, if the logging thread is interrupted.
+	 */
+	private void writeFully(ByteBuffer bytes) throws IOException {
+
+		boolean interrupted = Thread.interrupted();
+		try {
+			while (bytes.hasRemaining()) {
+				try {
+					channel.write(bytes);
+				} catch (ClosedByInterruptException e) {
+					// interrupted during the write: clear the flag again and continue with a new channel
+					interrupted |= Thread.interrupted();
+					reopenChannel();
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+
+
+	private void reopenChannel() throws IOException {
+
+		addWarn("File \"" + file + "\" was closed by an interrupt, reopening it.");
+		channel = channelOpener.open(Path.of(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+
+
+	/**
+	 * Open the active file again after a rollover or a failed open. If it can not be opened, the record is kept in the
+	 * buffer as long as it fits and written with the next successful open, otherwise it is dropped with an error.
+	 *
+	 * @return true, if the file is open
+	 */
+	private boolean reopen(byte[] bytes) throws IOException {
+
+		try {
+			openFile(true);
+			return true;
+
+		} catch (IOException e) {
+			if (bytes != null && bytes.length > buffer.remaining()) throw e;
+
+			if (bytes != null) buffer.put(bytes);
+			pendingRecords++;
+			addError("Could not open file \"" + file + "\", the record is kept until the file can be opened.", e);
+			return false;
+		}
+	}
+
+
+
+	/**
+	 * Close the active file and rename it to the file of the previous period.
+	 * The new active file is opened by append(), so a failed open is retried with the next record.
+	 */
+	private void rollover(String newPeriod) throws IOException {
+
+		commit(forcePolicy != ForcePolicy.NEVER);
+		channel.close();
+		channel = null;
+
+		Path activeFile = Path.of(file);
+		Path periodFile = Path.of(periodPrefix + currentPeriod + periodSuffix);
+
+		try {
+			if (Files.exists(activeFile)) {
+				if (periodFile.getParent() != null) {
+					Files.createDirectories(periodFile.getParent());
+				}
+				if (Files.exists(periodFile)) {
+					// never overwrite an already rolled file, append the active file to it instead
+					try (FileChannel target = FileChannel.open(periodFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+						 FileChannel source = FileChannel.open(activeFile, StandardOpenOption.READ)) {
+						long position = 0;
+						long size = source.size();
+						while (position < size) {
+							position += source.transferTo(position, size - position, target);
+						}
+					}
+					Files.delete(activeFile);
+				} else {
+					Files.move(activeFile, periodFile, StandardCopyOption.ATOMIC_MOVE);
+				}
+			}
+		} catch (IOException e) {
+			// keep on writing to the active file, no record must be lost because of a failed rename
+			addError("Could not roll over file \"" + file + "\" to \"" + periodFile + "\".", e);
+		}
+
+		currentPeriod = newPeriod;
+	}
+
+
+
+	private void openFile(boolean appendToFile) throws IOException {
+
+		Path path = Path.of(file);
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+
+		if (appendToFile) {
+			channel = channelOpener.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		} else {
+			channel = channelOpener.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		lastCommitMillis = clock.millis();
+
+		// written directly, the buffer may already hold records kept after a failed open
+		byte[] header = encoder.headerBytes();
+		if (channel.size() == 0 && header != null && header.length > 0) {
+			writeFully(ByteBuffer.wrap(header));
+		}
+	}
+
+
+
+	/**
+	 * Split the fileNamePattern at the date token %d{pattern[, zone]} in the notation used by the TimeBasedRollingPolicy.
+	 */
+	private void parseFileNamePattern(String pattern) {
+
+		int start = pattern.indexOf(DATE_TOKEN);
+		int end = pattern.indexOf('}', start);
+		if (start < 0 || end < 0) {
+			throw new IllegalArgumentException("fileNamePattern must contain %d{...}: " + pattern);
+		}
+
+		String[] options = pattern.substring(start + DATE_TOKEN.length(), end).split(",");
+		ZoneId zone = options.length > 1 ? ZoneId.of(options[1].trim()) : clock.getZone();
+		String datePattern = options[0].isBlank() ? "yyyy-MM-dd" : options[0].trim();
+
+		periodFormatter = DateTimeFormatter.ofPattern(datePattern).withZone(zone);
+		periodPrefix = pattern.substring(0, start);
+		periodSuffix = pattern.substring(end + 1);
+	}
+
+
+
+	void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	void setChannelOpener(ChannelOpener channelOpener) {
+		this.channelOpener = channelOpener;
+	}
+
+	public Encoder<E> getEncoder() {
+		return encoder;
+	}
+
+	public void setEncoder(Encoder<E> encoder) {
+		this.encoder = encoder;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	public String getFileNamePattern() {
+		return fileNamePattern;
+	}
+
+	public void setFileNamePattern(String fileNamePattern) {
+		this.fileNamePattern = fileNamePattern;
+	}
+
+	public boolean isAppend() {
+		return append;
+	}
+
+	public void setAppend(boolean append) {
+		this.append = append;
+	}
+
+	public int getFlushRecords() {
+		return flushRecords;
+	}
+
+	public void setFlushRecords(int flushRecords) {
+		this.flushRecords = flushRecords;
+	}
+
+	public long getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	public ForcePolicy getForcePolicy() {
+		return forcePolicy;
+	}
+
+	public void setForcePolicy(ForcePolicy forcePolicy) {
+		this.forcePolicy = forcePolicy;
+	}
+}
@@ -0,0 +1,382 @@
+package de.rthillmann.solarmonitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coordinates several instances of SolarMonitoring via lease files in a shared directory (e.g. NFS or a local directory
+ * for several instances on one host). Every instance needs its own working directory, because the log files in "log/"
+ * are not shared (see "Readme.md").
+ * <p>
+ * Every instance writes a heartbeat to its lease file "{instanceId}.lease" every heartbeatMillis.
+ * An instance is live, if its heartbeat is not older than leaseTimeoutMillis.
+ * The gateways are distributed over the live instances by a ConsistentHashRing.
+ * <p>
+ * To prevent duplicate samples during rebalancing, a gateway is only polled after its owner-file "{gateway}.owner"
+ * has been created by this instance and still contains it on the next heartbeat. The file is released by the previous
+ * owner on its next heartbeat or taken over, if the previous owner is not live anymore. Taking over renames the stale
+ * owner-file atomically, so of several instances taking over at the same time only one can remove it.
+ * <p>
+ * An instance stops polling leaseTimeoutMillis - heartbeatMillis after its last renewed lease, so clock skew and
+ * scheduling jitter up to heartbeatMillis do not lead to two instances polling the same gateway.
+ * <p>
+ * Lease files expired for more than STALE_LEASE_FACTOR * leaseTimeoutMillis (e.g. left by a crashed instance, whose
+ * default id changes with every start) are deleted, so the shared directory does not grow.
+ */
+public class LeaseFileGatewayCoordinator implements GatewayCoordinator {
+
+    private static final Logger applicationLogger = LoggerFactory.getLogger("ApplicationLogger");
+
+    private static final String LEASE_SUFFIX = ".lease";
+    private static final String OWNER_SUFFIX = ".owner";
+
+    static final int STALE_LEASE_FACTOR = 10;
+
+    private final Path directory;
+    private final String instanceId;
+    private final List<String> gateways;
+    private final long heartbeatMillis;
+    private final long leaseTimeoutMillis;
+
+    private Clock clock = Clock.systemUTC();
+
+    private volatile Set<String> ownedGateways = Collections.emptySet();
+    private volatile long lastHeartbeat;
+
+    private Consumer<String> ownershipListener = gateway -> { };
+
+    private ScheduledExecutorService executor;
+
+
+    /**
+     * @param directory          shared directory for lease- and owner-files
+     * @param instanceId         unique id of this instance
+     * @param gateways           all gateways shared by the instances
+     * @param heartbeatMillis    interval to renew the lease and rebalance
+     * @param leaseTimeoutMillis time after which an instance without heartbeat is treated as dead
+     */
+    public LeaseFileGatewayCoordinator(Path directory, String instanceId, List<String> gateways,
+                                       long heartbeatMillis, long leaseTimeoutMillis) {
+
+        if (leaseTimeoutMillis <= 2 * heartbeatMillis) {
+            throw new IllegalArgumentException("leaseTimeoutMillis must be greater than twice heartbeatMillis");
+        }
+
+        this.directory = directory;
+        this.instanceId = instanceId;
+        this.gateways = List.copyOf(gateways);
+        this.heartbeatMillis = heartbeatMillis;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+
+    @Override
+    public void start() {
+
+        applicationLogger.info("Coordinating gateways as instance " + instanceId + " in " + directory);
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LeaseFileGatewayCoordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // the first heartbeat claims the gateways, the next one confirms them in the background and
+        // tells the ownershipListener, so the start is not blocked and the gateways are polled at once
+        heartbeat();
+        executor.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    @Override
+    public void stop() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        Set<String> released = ownedGateways;
+        ownedGateways = Collections.emptySet();
+
+        try {
+            for (String gateway : released) {
+                deleteIfContains(ownerFile(gateway), instanceId);
+            }
+            Files.deleteIfExists(leaseFile(instanceId));
+
+        } catch (IOException e) {
+            applicationLogger.error("Could not release lease of instance " + instanceId + ": " + e);
+        }
+    }
+
+
+    @Override
+    public void setOwnershipListener(Consumer<String> listener) {
+        this.ownershipListener = listener;
+    }
+
+
+    @Override
+    public boolean owns(String gateway) {
+
+        // other instances take over after leaseTimeoutMillis, stop one heartbeat earlier as safety margin
+        return clock.millis() - lastHeartbeat < leaseTimeoutMillis - heartbeatMillis && ownedGateways.contains(gateway);
+    }
+
+
+    /**
+     * Renew the lease of this instance, release gateways which belong to other instances now
+     * and claim gateways which belong to this instance. A claimed gateway is owned, when the next heartbeat
+     * finds the owner-file still unchanged.
+     */
+    void heartbeat() {
+
+        try {
+            Files.createDirectories(directory);
+
+            long now = clock.millis();
+            writeAtomic(leaseFile(instanceId), Long.toString(now));
+
+            ConsistentHashRing ring = new ConsistentHashRing(liveInstances(now));
+            Set<String> owned = new HashSet<>();
+
+            for (String gateway : gateways) {
+
+                Path ownerFile = ownerFile(gateway);
+                String owner = read(ownerFile);
+
+                if (!instanceId.equals(ring.owner(gateway))) {
+                    if (instanceId.equals(owner)) {
+                        applicationLogger.info("Releasing gateway " + gateway);
+                        release(gateway);
+                    }
+                    continue;
+                }
+
+                // claimed on an earlier heartbeat and not taken over since
+                if (instanceId.equals(owner)) {
+                    owned.add(gateway);
+                    continue;
+                }
+
+                if (owner != null && !isLive(owner, now)) {
+                    applicationLogger.info("Taking over gateway " + gateway + " from dead instance " + owner);
+                    if (deleteIfContains(ownerFile, owner)) {
+                        owner = null;
+                    }
+                }
+
+                if (owner == null && claim(ownerFile)) {
+                    applicationLogger.info("Claimed gateway " + gateway + ", polling after the next heartbeat");
+                }
+            }
+
+            Set<String> previouslyOwned = ownedGateways;
+            ownedGateways = Collections.unmodifiableSet(owned);
+            lastHeartbeat = now;
+
+            for (String gateway : owned) {
+                if (!previouslyOwned.contains(gateway)) {
+                    ownershipListener.accept(gateway);
+                }
+            }
+
+        } catch (IOException e) {
+            applicationLogger.error("Heartbeat of instance " + instanceId + " failed: " + e);
+        }
+    }
+
+
+    /**
+     * Stop polling the gateway before its owner-file is deleted, so the next owner cannot poll it at the same time.
+     */
+    private void release(String gateway) throws IOException {
+
+        Set<String> remaining = new HashSet<>(ownedGateways);
+        remaining.remove(gateway);
+        ownedGateways = Collections.unmodifiableSet(remaining);
+
+        deleteIfContains(ownerFile(gateway), instanceId);
+    }
+
+
+    private Set<String> liveInstances(long now) throws IOException {
+
+        Set<String> instances = new HashSet<>();
+        instances.add(instanceId);
+
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(directory, "*" + LEASE_SUFFIX)) {
+            for (Path lease : leases) {
+                String fileName = lease.getFileName().toString();
+                String instance = fileName.substring(0, fileName.length() - LEASE_SUFFIX.length());
+                if (isLive(instance, now)) {
+                    instances.add(instance);
+                } else if (isStale(lease, now)) {
+                    deleteStaleLease(lease, now);
+                }
+            }
+        }
+
+        return instances;
+    }
+
+
+    private boolean isLive(String instance, long now) throws IOException {
+        return now - heartbeatOf(leaseFile(instance)) < leaseTimeoutMillis;
+    }
+
+
+    private boolean isStale(Path lease, long now) throws IOException {
+        return now - heartbeatOf(lease) > STALE_LEASE_FACTOR * leaseTimeoutMillis;
+    }
+
+
+    /**
+     * @return the time of the last heartbeat in the lease file or 0, if it does not exist or can not be parsed
+     */
+    private static long heartbeatOf(Path lease) throws IOException {
+
+        String heartbeat = read(lease);
+        if (heartbeat == null) return 0;
+
+        try {
+            return Long.parseLong(heartbeat.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Delete a stale lease file. As for owner-files the file is renamed first and put back, if its instance has
+     * renewed the lease meanwhile.
+     */
+    private void deleteStaleLease(Path lease, long now) throws IOException {
+
+        Path stale = lease.resolveSibling(lease.getFileName() + "." + instanceId + ".stale");
+        try {
+            Files.move(lease, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+
+        try {
+            if (isStale(stale, now)) {
+                applicationLogger.info("Deleting stale lease " + lease.getFileName());
+                return;
+            }
+
+            try {
+                Files.createLink(lease, stale);
+            } catch (FileAlreadyExistsException e) {
+                // renewed in between, the newer lease is kept
+            }
+
+        } finally {
+            Files.deleteIfExists(stale);
+        }
+    }
+
+
+    /**
+     * Create the owner-file atomically with its content as hard link to a temporary file, so only one instance can win
+     * and no other instance reads an empty owner-file.
+     */
+    private boolean claim(Path ownerFile) throws IOException {
+
+        Path temp = ownerFile.resolveSibling(ownerFile.getFileName() + "." + instanceId + ".tmp");
+        Files.writeString(temp, instanceId, StandardCharsets.UTF_8);
+
+        try {
+            Files.createLink(ownerFile, temp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+
+    /**
+     * Delete the owner-file, if it contains the given instance. The file is renamed atomically to a name of this
+     * instance first and checked afterwards, so a fresh owner-file written meanwhile by another instance is never
+     * deleted but put back.
+     *
+     * @return true, if the owner-file does not exist anymore
+     */
+    boolean deleteIfContains(Path file, String instance) throws IOException {
+
+        Path stale = file.resolveSibling(file.getFileName() + "." + instanceId + ".stale");
+        try {
+            Files.move(file, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+
+        try {
+            if (instance.equals(read(stale))) return true;
+
+            try {
+                Files.createLink(file, stale);
+            } catch (FileAlreadyExistsException e) {
+                // claimed by another instance in between, its next heartbeat finds the new owner
+            }
+            return false;
+
+        } finally {
+            Files.deleteIfExists(stale);
+        }
+    }
+
+
+    private void writeAtomic(Path file, String content) throws IOException {
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private static String read(Path file) throws IOException {
+
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+
+    private Path leaseFile(String instance) {
+        return directory.resolve(instance + LEASE_SUFFIX);
+    }
+
+
+    private Path ownerFile(String gateway) {
+        return directory.resolve(gateway.replaceAll("[^A-Za-z0-9.-]", "_") + OWNER_SUFFIX);
+    }
+
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
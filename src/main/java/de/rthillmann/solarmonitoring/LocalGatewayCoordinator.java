@@ -0,0 +1,22 @@
+package de.rthillmann.solarmonitoring;
+
+/**
+ * Coordinator for a single instance of SolarMonitoring: all gateways are owned by this instance.
+ */
+public class LocalGatewayCoordinator implements GatewayCoordinator {
+
+    @Override
+    public void start() {
+        // nothing to coordinate
+    }
+
+    @Override
+    public void stop() {
+        // nothing to release
+    }
+
+    @Override
+    public boolean owns(String gateway) {
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package de.rthillmann.solarmonitoring;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal OpenDTU-server answering the two Web-API calls used by SolarMonitoring with fixed data of a Hoymiles HM-800:
+ * - /api/livedata/status                   - total of the inverter and its serial number
+ * - /api/livedata/status?inv={serialnumber} - data of the modules DC-0 and DC-1
+ * <p>
+ * Used for the training run creating the AppCDS-archive and by the StartupBenchmark, so no real OpenDTU-server is needed.
+ * <p>
+ * Usage: java -cp SolarMonitoring.jar de.rthillmann.solarmonitoring.OpenDTUSimulator [{port}]
+ */
+public class OpenDTUSimulator {
+
+	static final String SERIAL = "114182912345";
+
+	static final String RUNNING_AT = "OpenDTU-simulator running at ";
+
+	private static final String STATUS = "{\"inverters\":[{\"serial\":\"" + SERIAL + "\",\"name\":\"HM-800\"}],"
+			+ "\"total\":" + values(355.034f, 933, 51.1f) + "}";
+
+	private static final String STATUS_INV = "{\"inverters\":[{\"serial\":\"" + SERIAL + "\",\"DC\":{"
+			+ "\"0\":" + values(159.815f, 465, 26.7f) + ","
+			+ "\"1\":" + values(195.219f, 468, 27.0f) + "}}]}";
+
+	private final HttpServer server;
+
+
+
+	private OpenDTUSimulator(HttpServer server) {
+		this.server = server;
+	}
+
+
+
+	/**
+	 * Start the simulator on the loopback address.
+	 *
+	 * @param port the port or 0 for any free port
+	 * @return the running simulator
+	 */
+	public static OpenDTUSimulator start(int port) throws IOException {
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/api/livedata/status", OpenDTUSimulator::handleStatus);
+		server.start();
+
+		return new OpenDTUSimulator(server);
+	}
+
+
+
+	/**
+	 * @return address to use as OpenDTU-server on the command line, e.g. "127.0.0.1:8080"
+	 */
+	public String address() {
+		return server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+	}
+
+
+
+	public void stop() {
+		server.stop(0);
+	}
+
+
+
+	private static void handleStatus(HttpExchange exchange) throws IOException {
+
+		String query = exchange.getRequestURI().getQuery();
+		byte[] body = (query != null && query.startsWith("inv=") ? STATUS_INV : STATUS).getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+
+
+	private static String values(float yieldTotal, int yieldDay, float power) {
+
+		return "{\"Power\":{\"v\":" + power + ",\"u\":\"W\",\"d\":1},"
+				+ "\"YieldDay\":{\"v\":" + yieldDay + ",\"u\":\"Wh\",\"d\":0},"
+				+ "\"YieldTotal\":{\"v\":" + yieldTotal + ",\"u\":\"kWh\",\"d\":3}}";
+	}
+
+
+
+	public static void main(String[] args) throws IOException {
+
+		OpenDTUSimulator simulator = start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+
+		System.out.println(RUNNING_AT + simulator.address());
+	}
+}
@@ -7,7 +7,7 @@
  * the program uses three loggers
  * - YieldDayLogger - writes every night at 23:55 local standard time the daily yield to logfile "log/solar_yieldday.log"
  * - PowerLogger    - writes every minute the actual power generated  to logfile "log/solar_power.log"
- *                    the log uses a RollingFileAppender so that the logfile from the previous day is renamed as "log/solar_power.yyyy-mm-dd.log"
+ *                    the log uses a GroupCommitFileAppender so that the logfile from the previous day is renamed as "log/solar_power.yyyy-mm-dd.log"
  * - applicationLogger  - if console-logging is enabled with cmdline-parm the actual power generated is also writen to applicationLogger
  * <p>
  * Tested with:
@@ -38,6 +38,18 @@
  *                          ApplicationLogger - logs application information
  *                             got additional <appender-ref ref="applicationAppender"/>
  *                                            <appender-ref ref="consoleAppender"/>
+ *  2026-10-18          - powerAppender uses GroupCommitFileAppender: records are written with group commit through a FileChannel
+ *                          instead of one write per line with immediateFlush, the daily rollover keeps the same file names
+ *  2026-10-18          - Several OpenDTU-servers can be given on command line. With cmdline-parm --coordination-dir several instances
+ *                          share the servers via lease files and consistent hashing (LeaseFileGatewayCoordinator),
+ *                          if more than one server is polled, the log lines are prefixed with the server address
+ *  2026-10-18          - Added command "report" (YieldReport) to write monthly and yearly CSV-reports and a columnar export of the yield history
+ *  2026-10-18          - Fast-start: powerAppender opens its file lazily, StartupBenchmark measures the
+ *                          time-to-first-sample against the OpenDTUSimulator, gradle-task cdsArchive creates an AppCDS-archive
+ *  2026-10-18          - Every OpenDTU-server is polled by its own task with connect- and read-timeout, so a hanging server
+ *                          does not stop polling the others. Coordinated instances refuse to share a log-directory.
+ *  2026-10-18          - YieldData logs the date with "yyyy" instead of the week-based year "YYYY", which logged Dec 29-31
+ *                          in week 1 with the following year
  * <p>
  * ToDo:
  * - Join various log-files to one continues log for YieldDay
@@ -55,17 +67,27 @@ import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.*;
 import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 
 
-public class SolarMonitoring implements Runnable {
+public class SolarMonitoring {
 	
 	private static final String application = "SolarMonitoring     ";
 	private static final String version     = "1.0.0               ";
@@ -80,16 +102,41 @@ public class SolarMonitoring implements Runnable {
 	private static final String LIVEDATA_STATUS = "/api/livedata/status";
 	private static final String LIVEDATA_STATUS_INV = "/api/livedata/status?inv=";
 
-	private volatile YieldData yieldData;
+	private static final String COORDINATION_DIR = "--coordination-dir";
+	private static final String INSTANCE_ID = "--instance-id";
+	private static final String REPORT = "report";
 
-	private String openDTUServer;
+	private static final long HEARTBEAT_MILLIS = 2000;
+	private static final long LEASE_TIMEOUT_MILLIS = 6000;
+
+	// a hanging OpenDTU-server must not block the next poll forever
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final int READ_TIMEOUT_MILLIS = 10000;
+
+	// every OpenDTU-server is polled by its own task, so a hanging server does not delay the others
+	private static final int MAX_POLL_THREADS = 8;
+
+	// latest yieldData per OpenDTU-server, only for servers owned by this instance
+	private final Map<String, YieldData> yieldData = new ConcurrentHashMap<>();
+
+	private final List<String> openDTUServers;
+
+	private final GatewayCoordinator coordinator;
+
+	// locked as long as this instance runs, so a second coordinated instance does not write to the same log files
+	private FileChannel logDirectoryLock;
+
+	// counted down with the first yieldData retrieved, used by the StartupBenchmark
+	private final CountDownLatch firstSample = new CountDownLatch(1);
+	private volatile long firstSampleMillis;
 
 
 
 	public SolarMonitoring(String[] args) {
 
 		printProgramStart();
-		openDTUServer = parseCommandline(args);
+		CmdLineParms cmdLineParms = parseCommandline(args);
+		openDTUServers = cmdLineParms.servers();
 
 
 		// create log-directory if not exists
@@ -104,20 +151,43 @@ public class SolarMonitoring implements Runnable {
 		}
 
 
-		openDTUServer = "http://" + openDTUServer;
+		// instances sharing the OpenDTU-servers must not share the log-directory, both would roll over "log/solar_power.log"
+		if (cmdLineParms.isCoordinated() && ! lockLogDirectory()) {
+			applicationLogger.error("log-directory is used by another instance - every instance needs its own working directory!");
+			System.exit(1);
+		}
+
+
+		if (cmdLineParms.isCoordinated()) {
+			coordinator = new LeaseFileGatewayCoordinator(Path.of(cmdLineParms.coordinationDir()), cmdLineParms.instanceId(),
+					openDTUServers, HEARTBEAT_MILLIS, LEASE_TIMEOUT_MILLIS);
+		} else {
+			coordinator = new LocalGatewayCoordinator();
+		}
 
 
 		// Try to get new data from OpenDTU-Server periodically
-		// executor calls run() method all 60 seconds
-		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2);
+		// pollExecutor calls poll() for every server all 60 seconds
+		ScheduledThreadPoolExecutor pollExecutor = new ScheduledThreadPoolExecutor(Math.min(openDTUServers.size(), MAX_POLL_THREADS));
+
+		// servers confirmed by the coordinator after the start (e.g. on its next heartbeat) are polled at once
+		coordinator.setOwnershipListener(server -> pollExecutor.execute(() -> poll(server)));
+		coordinator.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(coordinator::stop));
+
 		try {
-			executor.scheduleAtFixedRate(this, 0, 60, TimeUnit.SECONDS);
+			for (String server : openDTUServers) {
+				pollExecutor.scheduleAtFixedRate(() -> poll(server), 0, 60, TimeUnit.SECONDS);
+			}
 
 		} catch (Exception e) {
 			applicationLogger.error("Trying to get yieldData from OpenDTU server failed!");
 		}
 
 
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2);
+
+
 
 		// start executor for writing yieldPower to log file every minute
 		try {
@@ -191,6 +261,30 @@ public class SolarMonitoring implements Runnable {
 
 
 
+	/**
+	 * Lock the file "log/.lock" for this instance.
+	 *
+	 * @return false, if the log-directory is locked by another instance
+	 */
+	private boolean lockLogDirectory() {
+
+		try {
+			FileChannel channel = FileChannel.open(Path.of(LOG_DIR, ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (channel.tryLock() == null) {
+				channel.close();
+				return false;
+			}
+			logDirectoryLock = channel;
+
+		} catch (IOException e) {
+			applicationLogger.info("log-directory could not be locked: " + e);
+		}
+
+		return true;
+	}
+
+
+
 	/**
 	 * print some program start information to command line.
 	 */
@@ -206,44 +300,125 @@ public class SolarMonitoring implements Runnable {
 
 
 	/**
-	 * Parse command line and set server-var to parameter from command-line.
-	 * If no parameter is specified, print usage-messgae to command-line.
+	 * Parse command line and return the servers and coordination-parms from command-line.
+	 * If no server is specified or an option has no value, print usage-messgae to command-line.
 	 *
 	 * @param args command-line aprms
-	 * @return return server-address
+	 * @return record with server-addresses and coordination-parms
 	 */
-	public static String parseCommandline(String[] args){
+	public static CmdLineParms parseCommandline(String[] args){
 
-		String server = "localhost";
+		try {
+			return parseArgs(args);
 
-		if (args.length > 0) {
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printUsage();
+			System.exit(0);
+			return null;
+		}
+	}
 
-			// Print statements
-			applicationLogger.info("The command line arguments are:");
 
-			// Iterating the args array
-			// using for each loop
 
-			for (String val : args) {
-				// Printing command line arguments
-				applicationLogger.info(val);
+	/**
+	 * Parse command line without printing usage-message.
+	 *
+	 * @param args command-line aprms
+	 * @return record with server-addresses and coordination-parms
+	 * @throws IllegalArgumentException if no server is specified or an option has no value
+	 */
+	static CmdLineParms parseArgs(String[] args){
+
+		List<String> servers = new ArrayList<>();
+		String coordinationDir = null;
+		String instanceId = null;
 
-				server = val;
-				applicationLogger.info("Using following address to connect to OpenDTU-server: " + server);
+		// Print statements
+		applicationLogger.info("The command line arguments are:");
+
+		for (int i = 0; i < args.length; i++) {
+			// Printing command line arguments
+			applicationLogger.info(args[i]);
+
+			if (COORDINATION_DIR.equals(args[i])) {
+				coordinationDir = optionValue(args, ++i);
+			} else if (INSTANCE_ID.equals(args[i])) {
+				// used as file name in the coordination-dir, so "../x" must not leave it
+				instanceId = sanitizeInstanceId(optionValue(args, ++i));
+			} else {
+				servers.add(args[i]);
+				applicationLogger.info("Using following address to connect to OpenDTU-server: " + args[i]);
 			}
+		}
 
+		if (servers.isEmpty()) {
+			throw new IllegalArgumentException("No OpenDTU-server specified.");
 		}
-		else {
-			// Print info how to start program
-			System.out.println("Usage: java -jar SolarMonitoring {url}");
-			System.out.println("       url - You have to specify an URL to the OpenDTU-server.");
-			System.out.println();
-			System.out.println("       Example: java -jar SolarMonitoring 192.168.1.1");
-			System.out.println();
-			System.exit(0);
+
+		if (coordinationDir != null && instanceId == null) {
+			instanceId = defaultInstanceId();
+		}
+
+		return new CmdLineParms(List.copyOf(servers), coordinationDir, instanceId);
+	}
+
+
+
+	private static String optionValue(String[] args, int i) {
+
+		if (i >= args.length || args[i].isBlank() || args[i].startsWith("--")) {
+			throw new IllegalArgumentException("Missing value for option " + args[i - 1] + ".");
+		}
+
+		return args[i];
+	}
+
+
+
+	/**
+	 * Print info how to start program
+	 */
+	private static void printUsage() {
+
+		System.out.println("Usage: java -jar SolarMonitoring [--coordination-dir {dir}] [--instance-id {id}] {url} [{url} ...]");
+		System.out.println("       url - You have to specify one or more URLs to OpenDTU-servers.");
+		System.out.println("       dir - Shared directory, if several instances should share the OpenDTU-servers.");
+		System.out.println("       id  - Unique id of this instance, default is {hostname}-{pid}.");
+		System.out.println();
+		System.out.println("       Example: java -jar SolarMonitoring 192.168.1.1");
+		System.out.println("                java -jar SolarMonitoring --coordination-dir /mnt/shared/solar 192.168.1.1 192.168.1.2");
+		System.out.println();
+		System.out.println("       java -jar SolarMonitoring report [{log-dir} [{output-dir}]]");
+		System.out.println("       Writes monthly and yearly reports as CSV and a columnar export of all days (default: log report).");
+		System.out.println();
+	}
+
+
+
+	/**
+	 * @return the id of this instance as {hostname}-{pid}
+	 */
+	private static String defaultInstanceId() {
+
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "localhost";
 		}
 
-		return server;
+		return sanitizeInstanceId(host + "-" + ProcessHandle.current().pid());
+	}
+
+
+
+	/**
+	 * @return the instance id with all characters not allowed in a file name of the coordination-dir replaced by "_"
+	 */
+	private static String sanitizeInstanceId(String instanceId) {
+
+		return instanceId.replaceAll("[^A-Za-z0-9.-]", "_");
 	}
 
 
@@ -252,9 +427,12 @@ public class SolarMonitoring implements Runnable {
 	 * Try to retrieve yield data from OpenDTU server
 	 * The retrieved data in Json-format will pe parsed and record of type YieldData will be created and returned.
 	 *
+	 * @param openDTUServer OpenDTU-server address
 	 * @return a record with the actual yield data or null, if no data can be retrieved.
 	 */
-	private YieldData determineYieldData() {
+	private YieldData determineYieldData(String openDTUServer) {
+
+		openDTUServer = "http://" + openDTUServer;
 
 		JsonElement root = getJsonFromUrl(openDTUServer + LIVEDATA_STATUS);
 
@@ -325,7 +503,8 @@ public class SolarMonitoring implements Runnable {
 
 			HttpURLConnection request = (HttpURLConnection) url.openConnection();
 			//URLConnection request = url.openConnection();
-			request.setConnectTimeout(0);
+			request.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+			request.setReadTimeout(READ_TIMEOUT_MILLIS);
 			request.connect();
 
 			BufferedReader in = new BufferedReader(new InputStreamReader((InputStream) request.getContent()));
@@ -382,13 +561,16 @@ public class SolarMonitoring implements Runnable {
 	 */
 	private void yieldDay2Log() {
 
-		if ( yieldData != null) {
+		for (String server : openDTUServers) {
+
+			YieldData serverYieldData = ownedYieldData(server);
 
-			// ToDo:  String yieldDataStr = yieldData.toStringReduced();
-            String yieldDataStr = yieldData.toStringReduced();
+			if ( serverYieldData != null) {
 
-			yieldDayLogger.info(yieldDataStr);
-        	// System.out.println("Test-Output: " + yieldDataStr);
+				String yieldDataStr = serverPrefix(server) + serverYieldData.toStringReduced();
+
+				yieldDayLogger.info(yieldDataStr);
+			}
 		}
 
 	}
@@ -399,38 +581,102 @@ public class SolarMonitoring implements Runnable {
 	 */
 	private void yieldPower2Log() {
 
-		if ( yieldData != null) {
+		for (String server : openDTUServers) {
+
+			YieldData serverYieldData = ownedYieldData(server);
+
+			if ( serverYieldData != null) {
+
+				powerLogger.info(serverPrefix(server) + serverYieldData.toString());
+
+			}
+		}
+
+	}
+
 
-			powerLogger.info(yieldData.toString());
+	/**
+	 * Get the latest yieldData of a server, if the server is still owned by this instance.
+	 * Data of servers taken over by other instances is dropped, so no sample is logged twice.
+	 */
+	private YieldData ownedYieldData(String server) {
 
+		if (! coordinator.owns(server)) {
+			yieldData.remove(server);
+			return null;
 		}
 
+		return yieldData.get(server);
+	}
+
+
+	/**
+	 * With only one server the log lines keep their format, otherwise they are prefixed with the server address.
+	 */
+	private String serverPrefix(String server) {
+
+		return openDTUServers.size() > 1 ? server + " | " : "";
 	}
 
 
 
 
-	// Class that implements the Runnable interface
 	/*
-	 * Try to get new yieldData
+	 * Try to get new yieldData from one server
 	 *
-	 * 	method is called periodically from executor.scheduleAtFixedRate(this, 0, 60, TimeUnit.SECONDS);
+	 * 	method is called periodically for every server from pollExecutor.scheduleAtFixedRate(() -> poll(server), 0, 60, TimeUnit.SECONDS);
+	 * 	only servers owned by this instance are polled
 	 */
-	public void run()
+	private void poll(String server)
 	{
-		YieldData yieldDataNew = determineYieldData();
+		if (! coordinator.owns(server)) {
+			yieldData.remove(server);
+			return;
+		}
+
+		YieldData yieldDataNew = determineYieldData(server);
 
 		if ( yieldDataNew != null) {
 
-			yieldData = yieldDataNew;
+			yieldData.put(server, yieldDataNew);
 
+			if (firstSample.getCount() > 0) {
+				firstSampleMillis = System.currentTimeMillis();
+				firstSample.countDown();
+			}
 		}
 	}
 
 
 
+	/**
+	 * Wait until the first yieldData has been retrieved from an OpenDTU-server.
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit unit of timeout
+	 * @return true, if the first yieldData has been retrieved
+	 */
+	public boolean awaitFirstSample(long timeout, TimeUnit unit) throws InterruptedException {
+		return firstSample.await(timeout, unit);
+	}
+
+
+	/**
+	 * @return time in milliseconds since epoch, when the first yieldData has been retrieved or 0
+	 */
+	public long getFirstSampleMillis() {
+		return firstSampleMillis;
+	}
+
+
+
 	public static void main(String[] args) {
 
+		if (args.length > 0 && REPORT.equals(args[0])) {
+			YieldReport.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		new SolarMonitoring(args);
 
     }
@@ -0,0 +1,110 @@
+package de.rthillmann.solarmonitoring;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup benchmark: starts SolarMonitoring against the OpenDTUSimulator and reports the time-to-first-sample,
+ * i.e. the time from the start of the JVM until the first yieldData has been retrieved.
+ * The simulator runs in a process of its own (or is given as address of a running OpenDTU-server), so the network
+ * classes (java.net, sun.net.www, ...) are loaded cold by SolarMonitoring as on a real start. The time to start the
+ * simulator is not counted, the configuration of the logging (logback.xml) is counted, because the loggers of
+ * SolarMonitoring are created with it. The logger factory in use is reported, so a run without logback on the
+ * classpath is recognized.
+ * <p>
+ * The same run is used as training run for the AppCDS-archive (gradle-task cdsArchive), so the archive contains all
+ * classes loaded until the first sample.
+ * <p>
+ * Usage: java [-XX:SharedArchiveFile=SolarMonitoring.jsa] -cp SolarMonitoring.jar de.rthillmann.solarmonitoring.StartupBenchmark [{OpenDTU-server}]
+ */
+public class StartupBenchmark {
+
+	private static final long TIMEOUT_SECONDS = 30;
+
+	private static final long TARGET_MILLIS = 1000;
+
+
+
+	public static void main(String[] args) throws Exception {
+
+		long mainMillis = System.currentTimeMillis();
+
+		Process simulator = args.length > 0 ? null : startSimulator();
+		String server = args.length > 0 ? args[0] : simulatorAddress(simulator);
+		long simulatorMillis = System.currentTimeMillis() - mainMillis;
+
+		long startMillis = System.currentTimeMillis();
+		SolarMonitoring solarMonitoring = new SolarMonitoring(new String[] { server });
+
+		boolean sampled = solarMonitoring.awaitFirstSample(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (simulator != null) {
+			simulator.destroy();
+		}
+
+		if (!sampled) {
+			System.out.println("No sample retrieved within " + TIMEOUT_SECONDS + " seconds!");
+			System.exit(1);
+		}
+
+		long firstSampleMillis = solarMonitoring.getFirstSampleMillis();
+
+		// loaded after the measurement, ProcessHandle.Info.startInstant() is only accurate to one second on Linux
+		long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+		long jvmToMain = mainMillis - jvmStartMillis;
+		long startToFirstSample = firstSampleMillis - startMillis;
+		long timeToFirstSample = jvmToMain + startToFirstSample;
+
+		System.out.println("Startup benchmark");
+		System.out.println("=================");
+		System.out.println("JVM start to main()             : " + jvmToMain + " ms");
+		System.out.println("SolarMonitoring to first sample : " + startToFirstSample + " ms");
+		System.out.println("time-to-first-sample            : " + timeToFirstSample + " ms"
+				+ (timeToFirstSample < TARGET_MILLIS ? " (below " : " (target missed: ") + TARGET_MILLIS + " ms)");
+		System.out.println("(simulator start not counted    : " + simulatorMillis + " ms)");
+		System.out.println("logger factory                  : " + LoggerFactory.getILoggerFactory().getClass().getName());
+
+		System.exit(0);
+	}
+
+
+
+	/**
+	 * Start the OpenDTUSimulator on any free port in a JVM of its own with the classpath of this JVM,
+	 * but without its JVM-options (e.g. -XX:ArchiveClassesAtExit of the training run).
+	 */
+	private static Process startSimulator() throws IOException {
+
+		String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				OpenDTUSimulator.class.getName(), "0");
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		return builder.start();
+	}
+
+
+
+	/**
+	 * @return the address printed by the simulator, when it is ready: "OpenDTU-simulator running at {address}"
+	 */
+	private static String simulatorAddress(Process simulator) throws IOException {
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(simulator.getInputStream(), StandardCharsets.UTF_8));
+		String line = reader.readLine();
+
+		if (line == null || !line.startsWith(OpenDTUSimulator.RUNNING_AT)) {
+			simulator.destroy();
+			throw new IOException("OpenDTU-simulator did not start: " + line);
+		}
+
+		return line.substring(OpenDTUSimulator.RUNNING_AT.length());
+	}
+}
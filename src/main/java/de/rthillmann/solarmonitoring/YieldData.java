@@ -17,7 +17,8 @@ public record YieldData(ZonedDateTime zonedDateTime, YieldDataSingle total, Yiel
     @Override
     public String toString() {
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("YYYY-MM-dd HH:mm:ss");
+        // "yyyy" is the year of the date, "YYYY" the week-based year would log Dec 29-31 in week 1 with the following year
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
         return zonedDateTime.format(formatter) + " | Total: " + total.toString() + " | DC-0: " + module0.toString() + " | DC-1: " + module1.toString() + " |";
 
@@ -25,7 +26,7 @@ public record YieldData(ZonedDateTime zonedDateTime, YieldDataSingle total, Yiel
 
     public String toStringReduced() {
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("YYYY-MM-dd");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
         return zonedDateTime.format(formatter) + " | Total: " + total.toStringReduced() + " | DC-0: " + module0.toStringReduced() + " | DC-1: " + module1.toStringReduced() + " |";
 
@@ -0,0 +1,593 @@
+package de.rthillmann.solarmonitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Report generator for the yield history:
+ * reads "solar_yieldday.log" and the minute archives "solar_power.yyyy-mm-dd.log" and writes
+ * - yield_monthly.csv  - yield, module shares, best and worst day and peak power per month
+ * - yield_yearly.csv   - the same per year
+ * - yield_days.col     - compact columnar export of all days
+ * <p>
+ * The days are split by month and the months are processed with a parallel stream,
+ * every month is aggregated in a single pass over its days, the years are merged from the months.
+ * If a day is missing in "solar_yieldday.log", its yield is taken from the last sample of the minute archive.
+ * The day of a minute archive is taken from its file name, not from its lines.
+ * <p>
+ * Up to 2026-10 YieldData formatted the date with the week-based year ("YYYY"), so in logs of older versions the lines
+ * of Dec 29-31 may carry the following year if these days belong to week 1. The minute archives are not affected,
+ * such lines in "solar_yieldday.log" have to be corrected by hand.
+ * <p>
+ * Usage: java -jar SolarMonitoring report [{log-dir} [{output-dir}]]
+ * <p>
+ * Format of "yield_days.col" (big endian, as written by DataOutputStream), rows sorted by server and date:
+ * <pre>
+ * "SMCOL" version:byte(1)
+ * servers:int   server:UTF * servers
+ * rows:int
+ * server-index:short * rows
+ * epoch-day:int * rows
+ * total-kWh:float * rows
+ * day-Wh:int * rows
+ * dc0-Wh:int * rows
+ * dc1-Wh:int * rows
+ * peak-W:float * rows      (NaN if no minute archive exists)
+ * </pre>
+ */
+public class YieldReport {
+
+	private static final Logger applicationLogger = LoggerFactory.getLogger("ApplicationLogger");
+
+	static final String YIELD_DAY_LOG = "solar_yieldday.log";
+	static final String MONTHLY_CSV = "yield_monthly.csv";
+	static final String YEARLY_CSV = "yield_yearly.csv";
+	static final String DAYS_COLUMNAR = "yield_days.col";
+
+	static final byte[] COLUMNAR_MAGIC = "SMCOL".getBytes(StandardCharsets.US_ASCII);
+	static final byte COLUMNAR_VERSION = 1;
+
+	private static final Pattern POWER_ARCHIVE = Pattern.compile("solar_power\\.(\\d{4}-\\d{2}-\\d{2})\\.log");
+
+	private static final String CSV_HEADER = "server,period,days,totalKWh,yieldWh,dc0Wh,dc1Wh,dc0Share,dc1Share,"
+			+ "bestDay,bestWh,worstDay,worstWh,peakW";
+
+
+
+	/**
+	 * Yield of one day from one server.
+	 *
+	 * @param server    server address, empty if only one server is logged
+	 * @param date      the day
+	 * @param totalKWh  total yield at the end of the day
+	 * @param dayWh     yield of the day
+	 * @param module0Wh yield of the day of module DC-0
+	 * @param module1Wh yield of the day of module DC-1
+	 * @param peakW     peak power of the day or NaN, if unknown
+	 */
+	record Day(String server, LocalDate date, float totalKWh, int dayWh, int module0Wh, int module1Wh, float peakW) {
+
+		Day withPeakW(float peakW) {
+			return new Day(server, date, totalKWh, dayWh, module0Wh, module1Wh, peakW);
+		}
+
+		Day withDate(LocalDate date) {
+			return new Day(server, date, totalKWh, dayWh, module0Wh, module1Wh, peakW);
+		}
+	}
+
+
+
+	/**
+	 * Aggregated yield of a period (month or year) for one server.
+	 */
+	static class Aggregate {
+
+		final String server;
+		final String period;
+
+		int days;
+		float totalKWh;
+		long yieldWh;
+		long module0Wh;
+		long module1Wh;
+		Day best;
+		Day worst;
+		float peakW = Float.NaN;
+
+		Aggregate(String server, String period) {
+			this.server = server;
+			this.period = period;
+		}
+
+		void add(Day day) {
+
+			days++;
+			totalKWh = Math.max(totalKWh, day.totalKWh());
+			yieldWh += day.dayWh();
+			module0Wh += day.module0Wh();
+			module1Wh += day.module1Wh();
+			if (best == null || day.dayWh() > best.dayWh()) best = day;
+			if (worst == null || day.dayWh() < worst.dayWh()) worst = day;
+			peakW = maxPeak(peakW, day.peakW());
+		}
+
+		void merge(Aggregate other) {
+
+			days += other.days;
+			totalKWh = Math.max(totalKWh, other.totalKWh);
+			yieldWh += other.yieldWh;
+			module0Wh += other.module0Wh;
+			module1Wh += other.module1Wh;
+			if (best == null || (other.best != null && other.best.dayWh() > best.dayWh())) best = other.best;
+			if (worst == null || (other.worst != null && other.worst.dayWh() < worst.dayWh())) worst = other.worst;
+			peakW = maxPeak(peakW, other.peakW);
+		}
+
+		String toCsv() {
+
+			long modulesWh = module0Wh + module1Wh;
+
+			return String.join(",",
+					server,
+					period,
+					Integer.toString(days),
+					fixed(totalKWh, 3),
+					Long.toString(yieldWh),
+					Long.toString(module0Wh),
+					Long.toString(module1Wh),
+					modulesWh > 0 ? fixed((double) module0Wh / modulesWh, 3) : "",
+					modulesWh > 0 ? fixed((double) module1Wh / modulesWh, 3) : "",
+					best.date().toString(),
+					Integer.toString(best.dayWh()),
+					worst.date().toString(),
+					Integer.toString(worst.dayWh()),
+					Float.isNaN(peakW) ? "" : fixed(peakW, 1));
+		}
+
+		/**
+		 * Same as String.format(Locale.ROOT, "%.{decimals}f", value) for positive values, but without the slow Formatter.
+		 */
+		static String fixed(double value, int decimals) {
+			return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+		}
+
+		private static float maxPeak(float a, float b) {
+			if (Float.isNaN(a)) return b;
+			if (Float.isNaN(b)) return a;
+			return Math.max(a, b);
+		}
+	}
+
+
+
+	/**
+	 * Result of one month: all days and the aggregates per server.
+	 */
+	record MonthReport(YearMonth month, List<Day> days, List<Aggregate> aggregates) {
+	}
+
+
+
+	private final Path logDir;
+	private final Path outputDir;
+
+
+
+	public YieldReport(Path logDir, Path outputDir) {
+		this.logDir = logDir;
+		this.outputDir = outputDir;
+	}
+
+
+
+	/**
+	 * Read the yield history, aggregate it and write the report files.
+	 *
+	 * @return the monthly reports sorted by month
+	 */
+	public List<MonthReport> generate() throws IOException {
+
+		// one String per server instead of one per line, only for this run
+		Map<String, String> servers = new ConcurrentHashMap<>();
+
+		Map<YearMonth, List<Day>> yieldDays = readYieldDays(servers);
+		Map<YearMonth, List<Path>> archives = listPowerArchives();
+
+		Set<YearMonth> months = new TreeSet<>(yieldDays.keySet());
+		months.addAll(archives.keySet());
+
+		List<MonthReport> monthReports;
+		try {
+			monthReports = months.parallelStream()
+					.map(month -> aggregateMonth(month,
+							yieldDays.getOrDefault(month, List.of()),
+							archives.getOrDefault(month, List.of()),
+							servers))
+					.sorted(Comparator.comparing(MonthReport::month))
+					.collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		// years are merged from the months, the days are not read again
+		Map<String, Aggregate> years = new TreeMap<>();
+		for (MonthReport monthReport : monthReports) {
+			for (Aggregate month : monthReport.aggregates()) {
+				String year = Integer.toString(monthReport.month().getYear());
+				years.computeIfAbsent(month.server + "|" + year, key -> new Aggregate(month.server, year)).merge(month);
+			}
+		}
+
+		Files.createDirectories(outputDir);
+
+		writeCsv(outputDir.resolve(MONTHLY_CSV),
+				monthReports.stream().flatMap(monthReport -> monthReport.aggregates().stream()).collect(Collectors.toList()));
+		writeCsv(outputDir.resolve(YEARLY_CSV), new ArrayList<>(years.values()));
+		writeColumnar(outputDir.resolve(DAYS_COLUMNAR),
+				monthReports.stream().flatMap(monthReport -> monthReport.days().stream())
+						.sorted(Comparator.comparing(Day::server).thenComparing(Day::date))
+						.collect(Collectors.toList()));
+
+		applicationLogger.info("Report for " + months.size() + " months written to " + outputDir);
+
+		return monthReports;
+	}
+
+
+
+	/**
+	 * Parse "solar_yieldday.log" in parallel and split the days by month.
+	 */
+	private Map<YearMonth, List<Day>> readYieldDays(Map<String, String> servers) throws IOException {
+
+		Path file = logDir.resolve(YIELD_DAY_LOG);
+		if (!Files.exists(file)) return Map.of();
+
+		try (Stream<String> lines = Files.lines(file)) {
+			return lines.parallel()
+					.map(line -> parseLine(line, servers))
+					.filter(Objects::nonNull)
+					.collect(Collectors.groupingBy(day -> YearMonth.from(day.date())));
+		}
+	}
+
+
+
+	/**
+	 * List the minute archives "solar_power.yyyy-mm-dd.log" split by month.
+	 */
+	private Map<YearMonth, List<Path>> listPowerArchives() throws IOException {
+
+		if (!Files.isDirectory(logDir)) return Map.of();
+
+		Map<YearMonth, List<Path>> archives = new HashMap<>();
+
+		try (Stream<Path> files = Files.list(logDir)) {
+			files.forEach(file -> {
+				LocalDate date = archiveDate(file);
+				if (date != null) {
+					archives.computeIfAbsent(YearMonth.from(date), key -> new ArrayList<>()).add(file);
+				}
+			});
+		}
+
+		return archives;
+	}
+
+
+
+	/**
+	 * @return the day of the minute archive "solar_power.yyyy-mm-dd.log" or null, if the file is no archive
+	 */
+	private static LocalDate archiveDate(Path file) {
+
+		Matcher matcher = POWER_ARCHIVE.matcher(file.getFileName().toString());
+		if (!matcher.matches()) return null;
+
+		try {
+			return LocalDate.parse(matcher.group(1));
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * Merge the days of a month with its minute archives and aggregate them in a single pass.
+	 */
+	private static MonthReport aggregateMonth(YearMonth month, List<Day> yieldDays, List<Path> archives, Map<String, String> servers) {
+
+		// days per server sorted by date
+		Map<String, TreeMap<LocalDate, Day>> serverDays = new TreeMap<>();
+		for (Day day : yieldDays) {
+			serverDays.computeIfAbsent(day.server(), server -> new TreeMap<>()).put(day.date(), day);
+		}
+
+		for (Path archive : archives) {
+			for (Day archiveDay : readPowerArchive(archive, servers)) {
+				// the nightly yield-day record wins, the archive adds the peak power and fills missing days
+				serverDays.computeIfAbsent(archiveDay.server(), server -> new TreeMap<>())
+						.merge(archiveDay.date(), archiveDay, (day, fromArchive) -> day.withPeakW(fromArchive.peakW()));
+			}
+		}
+
+		List<Day> days = new ArrayList<>(yieldDays.size());
+		List<Aggregate> aggregates = new ArrayList<>(serverDays.size());
+
+		for (Map.Entry<String, TreeMap<LocalDate, Day>> server : serverDays.entrySet()) {
+			Aggregate aggregate = new Aggregate(server.getKey(), month.toString());
+			for (Day day : server.getValue().values()) {
+				aggregate.add(day);
+				days.add(day);
+			}
+			aggregates.add(aggregate);
+		}
+
+		return new MonthReport(month, days, aggregates);
+	}
+
+
+
+	/**
+	 * Read one minute archive in a single pass: the last sample of the day holds the yield of the day,
+	 * the maximum of all samples is the peak power.
+	 * The day is taken from the file name, older versions may have logged Dec 29-31 with the following year.
+	 *
+	 * @return one day per server
+	 */
+	private static List<Day> readPowerArchive(Path archive, Map<String, String> servers) {
+
+		LocalDate date = archiveDate(archive);
+		Map<String, Day> days = new HashMap<>();
+
+		try (Stream<String> lines = Files.lines(archive)) {
+			lines.map(line -> parseLine(line, servers))
+					.filter(Objects::nonNull)
+					.forEach(sample -> days.merge(sample.server(), sample.withDate(date), (day, next) -> new Day(
+							next.server(), date, next.totalKWh(), next.dayWh(), next.module0Wh(), next.module1Wh(),
+							Aggregate.maxPeak(day.peakW(), next.peakW()))));
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return new ArrayList<>(days.values());
+	}
+
+
+
+	/**
+	 * Parse one line written from YieldData.toString() or YieldData.toStringReduced(), optionally prefixed with the server:
+	 * <pre>
+	 * 2024-05-29 | Total:    354,101 kWh     3105 Wh | DC-0:    159,350 kWh     1555 Wh | DC-1:    194,751 kWh     1550 Wh |
+	 * 192.168.1.1 | 2024-05-30 13:48:25 | Total:    355,034 kWh      933 Wh     51,1 W | DC-0: ... | DC-1: ... |
+	 * </pre>
+	 *
+	 * @return the parsed day or null, if the line can not be parsed
+	 */
+	static Day parseLine(String line) {
+		return parseLine(line, null);
+	}
+
+
+
+	/**
+	 * Parse one line as parseLine(line) and share the server address of all lines of one report.
+	 *
+	 * @param servers server addresses of the report, the server of a parsed line is added
+	 * @return the parsed day or null, if the line can not be parsed
+	 */
+	private static Day parseLine(String line, Map<String, String> servers) {
+
+		// the lines are scanned by hand, regular expressions and DateTimeFormatter are too slow for millions of lines
+		int fieldEnd = line.indexOf('|');
+		if (fieldEnd < 0) return null;
+
+		// lines of several servers start with the server address
+		String server = "";
+		LocalDate date = parseDate(line, 0, fieldEnd);
+		if (date == null) {
+			server = line.substring(0, fieldEnd).trim();
+			int dateStart = fieldEnd + 1;
+			fieldEnd = line.indexOf('|', dateStart);
+			if (fieldEnd < 0) return null;
+			date = parseDate(line, dateStart, fieldEnd);
+			if (date == null) return null;
+		}
+
+		int totalEnd = line.indexOf('|', fieldEnd + 1);
+		int module0End = totalEnd < 0 ? -1 : line.indexOf('|', totalEnd + 1);
+		int module1End = module0End < 0 ? -1 : line.indexOf('|', module0End + 1);
+		if (module1End < 0) return null;
+
+		String[] total = values(line, fieldEnd + 1, totalEnd, "Total:");
+		String[] module0 = values(line, totalEnd + 1, module0End, "DC-0:");
+		String[] module1 = values(line, module0End + 1, module1End, "DC-1:");
+		if (total == null || module0 == null || module1 == null) return null;
+
+		try {
+			float totalKWh = number(total[0]);
+			int dayWh = Integer.parseInt(total[2]);
+			int module0Wh = Integer.parseInt(module0[2]);
+			int module1Wh = Integer.parseInt(module1[2]);
+			float peakW = total.length >= 6 ? number(total[4]) : Float.NaN;
+
+			// share one String per server instead of one per line, only for lines parsed completely
+			if (servers != null && !server.isEmpty()) {
+				server = servers.computeIfAbsent(server, key -> key);
+			}
+
+			return new Day(server, date, totalKWh, dayWh, module0Wh, module1Wh, peakW);
+
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * Parse the date "yyyy-mm-dd" at the start of the field between from and to.
+	 *
+	 * @return the date or null, if the field does not start with a date
+	 */
+	private static LocalDate parseDate(String line, int from, int to) {
+
+		while (from < to && line.charAt(from) == ' ') from++;
+		if (to - from < 10 || line.charAt(from + 4) != '-' || line.charAt(from + 7) != '-') return null;
+
+		int year = digits(line, from, 4);
+		int month = digits(line, from + 5, 2);
+		int day = digits(line, from + 8, 2);
+		if (year < 0 || month < 0 || day < 0) return null;
+
+		try {
+			return LocalDate.of(year, month, day);
+		} catch (DateTimeException e) {
+			return null;
+		}
+	}
+
+
+
+	private static int digits(String line, int from, int count) {
+
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+
+
+	/**
+	 * Split the field between from and to, e.g. "Total:    355,034 kWh      933 Wh     51,1 W", into its values after the label.
+	 *
+	 * @return the values or null, if the field does not start with the label or has less than 4 values
+	 */
+	private static String[] values(String line, int from, int to, String label) {
+
+		while (from < to && line.charAt(from) == ' ') from++;
+		if (!line.startsWith(label, from)) return null;
+
+		String[] values = new String[6];
+		int count = 0;
+		int i = from + label.length();
+
+		while (i < to && count < values.length) {
+			while (i < to && line.charAt(i) == ' ') i++;
+			int tokenStart = i;
+			while (i < to && line.charAt(i) != ' ') i++;
+			if (i > tokenStart) {
+				values[count++] = line.substring(tokenStart, i);
+			}
+		}
+
+		if (count < 4) return null;
+
+		return count == values.length ? values : Arrays.copyOf(values, count);
+	}
+
+
+
+	/**
+	 * The numbers are formatted with the default locale, so "," and "." are accepted as decimal separator.
+	 */
+	private static float number(String value) {
+		return Float.parseFloat(value.replace(',', '.'));
+	}
+
+
+
+	private static void writeCsv(Path file, List<Aggregate> aggregates) throws IOException {
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(CSV_HEADER);
+			writer.newLine();
+			for (Aggregate aggregate : aggregates) {
+				writer.write(aggregate.toCsv());
+				writer.newLine();
+			}
+		}
+	}
+
+
+
+	private static void writeColumnar(Path file, List<Day> days) throws IOException {
+
+		List<String> servers = days.stream().map(Day::server).distinct().sorted().collect(Collectors.toList());
+		Map<String, Integer> serverIndex = new HashMap<>();
+		for (int i = 0; i < servers.size(); i++) {
+			serverIndex.put(servers.get(i), i);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+
+			out.write(COLUMNAR_MAGIC);
+			out.writeByte(COLUMNAR_VERSION);
+
+			out.writeInt(servers.size());
+			for (String server : servers) {
+				out.writeUTF(server);
+			}
+
+			out.writeInt(days.size());
+			for (Day day : days) out.writeShort(serverIndex.get(day.server()));
+			for (Day day : days) out.writeInt((int) day.date().toEpochDay());
+			for (Day day : days) out.writeFloat(day.totalKWh());
+			for (Day day : days) out.writeInt(day.dayWh());
+			for (Day day : days) out.writeInt(day.module0Wh());
+			for (Day day : days) out.writeInt(day.module1Wh());
+			for (Day day : days) out.writeFloat(day.peakW());
+		}
+	}
+
+
+
+	public static void main(String[] args) {
+
+		Path logDir = Path.of(args.length > 0 ? args[0] : "log");
+		Path outputDir = Path.of(args.length > 1 ? args[1] : "report");
+
+		try {
+			new YieldReport(logDir, outputDir).generate();
+		} catch (IOException e) {
+			applicationLogger.error("Report could not be written: " + e);
+		}
+	}
+}
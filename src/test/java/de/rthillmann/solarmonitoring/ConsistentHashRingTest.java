@@ -0,0 +1,58 @@
+package de.rthillmann.solarmonitoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void ownerWithoutInstances() {
+        assertNull(new ConsistentHashRing(Set.of()).owner("192.168.1.1"));
+    }
+
+    @Test
+    void ownerIsIndependentOfOrder() {
+
+        ConsistentHashRing ring1 = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing ring2 = new ConsistentHashRing(List.of("c", "a", "b"));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ring1.owner("192.168.1." + i), ring2.owner("192.168.1." + i));
+        }
+    }
+
+    @Test
+    void onlyGatewaysOfRemovedInstanceMove() {
+
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing ringWithoutC = new ConsistentHashRing(List.of("a", "b"));
+
+        for (int i = 0; i < 100; i++) {
+            String gateway = "192.168.1." + i;
+            if (!"c".equals(ring.owner(gateway))) {
+                assertEquals(ring.owner(gateway), ringWithoutC.owner(gateway));
+            }
+        }
+    }
+
+    @Test
+    void everyInstanceGetsGateways() {
+
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+
+        int[] count = new int[3];
+        for (int i = 0; i < 300; i++) {
+            count[ring.owner("192.168.1." + i).charAt(0) - 'a']++;
+        }
+
+        for (int c : count) {
+            assertTrue(c > 30, "unbalanced distribution");
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package de.rthillmann.solarmonitoring;
+
+import ch.qos.logback.core.encoder.EncoderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitFileAppenderTest {
+
+    @TempDir
+    Path logDir;
+
+    Path file;
+    GroupCommitFileAppender<String> appender;
+
+
+    /**
+     * Encoder writing every event as one line.
+     */
+    static class LineEncoder extends EncoderBase<String> {
+
+        @Override
+        public byte[] headerBytes() {
+            return null;
+        }
+
+        @Override
+        public byte[] encode(String event) {
+            return (event + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] footerBytes() {
+            return null;
+        }
+    }
+
+
+    /**
+     * FileChannel writing only a part of the first write and failing on the second one, like a disk which is full
+     * for a moment.
+     */
+    static class FailingOnceChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private int writes;
+
+        FailingOnceChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+
+            writes++;
+            if (writes == 1) {
+                ByteBuffer part = src.duplicate();
+                part.limit(part.position() + 5);
+                int written = channel.write(part);
+                src.position(src.position() + written);
+                return written;
+            }
+            if (writes == 2) {
+                throw new IOException("No space left on device");
+            }
+            return channel.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+
+
+    @BeforeEach
+    void setUp() {
+
+        file = logDir.resolve("solar_power.log");
+
+        appender = new GroupCommitFileAppender<>();
+        appender.setName("test");
+        appender.setEncoder(new LineEncoder());
+        appender.setFile(file.toString());
+        appender.setFlushRecords(3);
+        appender.setFlushIntervalMillis(60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        appender.stop();
+    }
+
+
+    @Test
+    void commitAfterFlushRecords() throws IOException {
+
+        appender.start();
+
+        appender.doAppend("line 1");
+        appender.doAppend("line 2");
+        assertEquals(List.of(), Files.readAllLines(file));
+
+        appender.doAppend("line 3");
+        assertEquals(List.of("line 1", "line 2", "line 3"), Files.readAllLines(file));
+    }
+
+    @Test
+    void flush() throws IOException {
+
+        appender.start();
+
+        appender.doAppend("line 1");
+        appender.flush();
+
+        assertEquals(List.of("line 1"), Files.readAllLines(file));
+    }
+
+    @Test
+    void flushInterval() throws Exception {
+
+        appender.setFlushIntervalMillis(10);
+        appender.start();
+
+        appender.doAppend("line 1");
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (Files.size(file) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(List.of("line 1"), Files.readAllLines(file));
+    }
+
+    @Test
+    void writeThroughAfterQuietPeriod() throws IOException {
+
+        appender.setClock(Clock.fixed(Instant.parse("2024-05-30T12:00:00Z"), ZoneOffset.UTC));
+        appender.start();
+
+        appender.doAppend("line 1");
+        assertEquals(List.of(), Files.readAllLines(file));
+
+        // one sample per minute: the last commit is older than flushIntervalMillis, so the record is written at once
+        appender.setClock(Clock.fixed(Instant.parse("2024-05-30T12:01:00Z"), ZoneOffset.UTC));
+        appender.doAppend("line 2");
+        assertEquals(List.of("line 1", "line 2"), Files.readAllLines(file));
+    }
+
+    @Test
+    void interruptedThreadDoesNotCloseFile() throws IOException {
+
+        appender.setFlushRecords(1);
+        appender.start();
+
+        Thread.currentThread().interrupt();
+        appender.doAppend("line 1");
+        appender.doAppend("line 2");
+
+        // the interrupt flag is restored for the caller
+        assertTrue(Thread.interrupted());
+
+        appender.doAppend("line 3");
+        assertEquals(List.of("line 1", "line 2", "line 3"), Files.readAllLines(file));
+    }
+
+    @Test
+    void stopWhileFlushing() throws IOException {
+
+        appender.setFlushRecords(1000);
+        appender.setFlushIntervalMillis(1);
+        appender.start();
+
+        for (int i = 0; i < 10_000; i++) {
+            appender.doAppend("line " + i);
+        }
+        appender.stop();
+
+        assertEquals(10_000, Files.readAllLines(file).size());
+    }
+
+    @Test
+    void stopWritesPendingRecords() throws IOException {
+
+        appender.setForcePolicy(GroupCommitFileAppender.ForcePolicy.COMMIT);
+        appender.start();
+
+        appender.doAppend("line 1");
+        appender.stop();
+
+        assertFalse(appender.isStarted());
+        assertEquals(List.of("line 1"), Files.readAllLines(file));
+    }
+
+    @Test
+    void appendToExistingFile() throws IOException {
+
+        Files.writeString(file, "line 0\n");
+        appender.start();
+
+        appender.doAppend("line 1");
+        appender.stop();
+
+        assertEquals(List.of("line 0", "line 1"), Files.readAllLines(file));
+    }
+
+    @Test
+    void rollover() throws IOException {
+
+        appender.setFileNamePattern(logDir.resolve("solar_power.%d{yyyy-MM-dd, Etc/GMT-1}.log").toString());
+        appender.setClock(Clock.fixed(Instant.parse("2024-05-29T21:00:00Z"), ZoneOffset.UTC));
+        appender.start();
+
+        appender.doAppend("2024-05-29 line");
+
+        // 23:30 UTC is already the next day in standard time Etc/GMT-1
+        appender.setClock(Clock.fixed(Instant.parse("2024-05-29T23:30:00Z"), ZoneOffset.UTC));
+        appender.doAppend("2024-05-30 line");
+        appender.stop();
+
+        Path rolledFile = logDir.resolve("solar_power.2024-05-29.log");
+        assertTrue(Files.exists(rolledFile));
+        assertEquals(List.of("2024-05-29 line"), Files.readAllLines(rolledFile));
+        assertEquals(List.of("2024-05-30 line"), Files.readAllLines(file));
+    }
+
+    @Test
+    void failedCommitNeitherLosesNorRepeatsRecords() throws IOException {
+
+        appender.setChannelOpener((path, options) -> new FailingOnceChannel(FileChannel.open(path, options)));
+        appender.start();
+
+        appender.doAppend("line 1");
+        appender.doAppend("line 2");
+        // first commit: "line " is written, then the disk is full
+        appender.doAppend("line 3");
+        assertEquals(List.of("line "), Files.readAllLines(file));
+
+        appender.doAppend("line 4");
+        appender.stop();
+
+        assertEquals(List.of("line 1", "line 2", "line 3", "line 4"), Files.readAllLines(file));
+    }
+
+    @Test
+    void rolloverRetriesFailedOpen() throws IOException {
+
+        AtomicInteger failingOpens = new AtomicInteger();
+        appender.setChannelOpener((path, options) -> {
+            if (failingOpens.getAndDecrement() > 0) throw new IOException("Permission denied");
+            return FileChannel.open(path, options);
+        });
+        appender.setFileNamePattern(logDir.resolve("solar_power.%d{yyyy-MM-dd, Etc/GMT-1}.log").toString());
+        appender.setClock(Clock.fixed(Instant.parse("2024-05-29T21:00:00Z"), ZoneOffset.UTC));
+        appender.start();
+
+        appender.doAppend("2024-05-29 line");
+
+        // the new active file can not be opened after the rollover, the record is kept
+        failingOpens.set(1);
+        appender.setClock(Clock.fixed(Instant.parse("2024-05-29T23:30:00Z"), ZoneOffset.UTC));
+        appender.doAppend("2024-05-30 line 1");
+        assertFalse(Files.exists(file));
+
+        appender.doAppend("2024-05-30 line 2");
+        appender.stop();
+
+        assertEquals(List.of("2024-05-29 line"), Files.readAllLines(logDir.resolve("solar_power.2024-05-29.log")));
+        assertEquals(List.of("2024-05-30 line 1", "2024-05-30 line 2"), Files.readAllLines(file));
+    }
+
+    @Test
+    void lazyOpensFileWithFirstRecord() throws IOException {
+
+        appender.setLazy(true);
+        appender.start();
+
+        assertTrue(appender.isStarted());
+        assertFalse(Files.exists(file));
+
+        appender.doAppend("line 1");
+        appender.flush();
+
+        assertEquals(List.of("line 1"), Files.readAllLines(file));
+    }
+
+    @Test
+    void lazyOpenRetriedWithNextRecord() throws IOException {
+
+        // the file can not be created while its directory is a regular file
+        Path dir = logDir.resolve("sub");
+        Files.writeString(dir, "");
+        appender.setFile(dir.resolve("solar_power.log").toString());
+        appender.setFlushRecords(1);
+        appender.setLazy(true);
+        appender.start();
+
+        appender.doAppend("line 1");
+
+        Files.delete(dir);
+        Files.createDirectory(dir);
+        appender.doAppend("line 2");
+
+        assertEquals(List.of("line 2"), Files.readAllLines(dir.resolve("solar_power.log")));
+    }
+
+    @Test
+    void lazyStopWithoutRecords() {
+
+        appender.setLazy(true);
+        appender.start();
+        appender.stop();
+
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void startWithoutEncoderFails() {
+
+        appender.setEncoder(null);
+        appender.start();
+
+        assertFalse(appender.isStarted());
+    }
+}
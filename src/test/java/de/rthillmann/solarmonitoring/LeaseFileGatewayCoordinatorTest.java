@@ -0,0 +1,267 @@
+package de.rthillmann.solarmonitoring;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaseFileGatewayCoordinatorTest {
+
+    @TempDir
+    Path coordinationDir;
+
+    final List<String> gateways = new ArrayList<>();
+    final TestClock clock = new TestClock();
+
+    LeaseFileGatewayCoordinator instanceA;
+    LeaseFileGatewayCoordinator instanceB;
+
+
+    /**
+     * Clock shared by the instances, which is moved forward by the test.
+     */
+    static class TestClock extends Clock {
+
+        long millis = Instant.parse("2024-05-30T12:00:00Z").toEpochMilli();
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+
+    @BeforeEach
+    void setUp() {
+
+        for (int i = 0; i < 20; i++) {
+            gateways.add("192.168.1." + i);
+        }
+
+        instanceA = new LeaseFileGatewayCoordinator(coordinationDir, "a", gateways, 2000, 6000);
+        instanceA.setClock(clock);
+        instanceB = new LeaseFileGatewayCoordinator(coordinationDir, "b", gateways, 2000, 6000);
+        instanceB.setClock(clock);
+    }
+
+
+    @Test
+    void singleInstanceOwnsAllGateways() {
+
+        // claimed gateways are polled after the next heartbeat has confirmed the owner-files
+        instanceA.heartbeat();
+        for (String gateway : gateways) {
+            assertFalse(instanceA.owns(gateway));
+        }
+
+        instanceA.heartbeat();
+        for (String gateway : gateways) {
+            assertTrue(instanceA.owns(gateway));
+        }
+    }
+
+    @Test
+    void gatewaysAreSharedWithoutDuplicates() {
+
+        instanceA.heartbeat();
+        instanceA.heartbeat();
+
+        // b has to wait until a has released the gateways
+        instanceB.heartbeat();
+        for (String gateway : gateways) {
+            assertTrue(instanceA.owns(gateway));
+            assertFalse(instanceB.owns(gateway));
+        }
+
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+        for (String gateway : gateways) {
+            assertFalse(instanceA.owns(gateway) && instanceB.owns(gateway), "at most one owner for " + gateway);
+        }
+
+        instanceB.heartbeat();
+
+        int ownedByB = 0;
+        for (String gateway : gateways) {
+            assertTrue(instanceA.owns(gateway) ^ instanceB.owns(gateway), "exactly one owner for " + gateway);
+            if (instanceB.owns(gateway)) ownedByB++;
+        }
+        assertTrue(ownedByB > 0);
+    }
+
+    @Test
+    void deadInstanceIsTakenOver() {
+
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+        instanceB.heartbeat();
+
+        // b dies, its lease expires
+        clock.millis += 7000;
+        instanceA.heartbeat();
+        instanceA.heartbeat();
+
+        for (String gateway : gateways) {
+            assertTrue(instanceA.owns(gateway));
+            assertFalse(instanceB.owns(gateway));
+        }
+    }
+
+    @Test
+    void pollingStopsOneHeartbeatBeforeLeaseExpires() {
+
+        instanceA.heartbeat();
+        instanceA.heartbeat();
+
+        clock.millis += 3999;
+        assertTrue(instanceA.owns(gateways.get(0)));
+
+        // other instances take over after 6000 ms
+        clock.millis += 1;
+        assertFalse(instanceA.owns(gateways.get(0)));
+    }
+
+    @Test
+    void takeOverKeepsFreshOwnerFile() throws IOException {
+
+        // b has already taken over the gateway from the dead instance c, a still sees c as owner
+        Path ownerFile = coordinationDir.resolve("192.168.1.0.owner");
+        Files.writeString(ownerFile, "b");
+
+        assertFalse(instanceA.deleteIfContains(ownerFile, "c"));
+        assertEquals("b", Files.readString(ownerFile));
+
+        assertTrue(instanceA.deleteIfContains(ownerFile, "b"));
+        assertFalse(Files.exists(ownerFile));
+
+        try (Stream<Path> files = Files.list(coordinationDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void stopReleasesGateways() {
+
+        instanceA.heartbeat();
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+
+        instanceA.stop();
+        instanceB.heartbeat();
+        instanceB.heartbeat();
+
+        int ownedByB = 0;
+        for (String gateway : gateways) {
+            assertFalse(instanceA.owns(gateway));
+            if (instanceB.owns(gateway)) ownedByB++;
+        }
+        assertEquals(gateways.size(), ownedByB);
+    }
+
+    @Test
+    void startDoesNotWaitForConfirmation() throws InterruptedException {
+
+        LeaseFileGatewayCoordinator instance = new LeaseFileGatewayCoordinator(coordinationDir, "c", gateways, 500, 2000);
+        Set<String> confirmed = ConcurrentHashMap.newKeySet();
+        CountDownLatch allConfirmed = new CountDownLatch(gateways.size());
+        instance.setOwnershipListener(gateway -> {
+            confirmed.add(gateway);
+            allConfirmed.countDown();
+        });
+
+        try {
+            long start = System.nanoTime();
+            instance.start();
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500), "start() must not wait for the next heartbeat");
+            assertFalse(instance.owns(gateways.get(0)));
+
+            // the next heartbeat confirms the claims and tells the listener
+            assertTrue(allConfirmed.await(5, TimeUnit.SECONDS));
+            assertEquals(Set.copyOf(gateways), confirmed);
+            for (String gateway : gateways) {
+                assertTrue(instance.owns(gateway));
+            }
+
+        } finally {
+            instance.stop();
+        }
+    }
+
+    @Test
+    void listenerIsToldAboutTakenOverGateways() {
+
+        List<String> confirmed = new ArrayList<>();
+        instanceA.setOwnershipListener(confirmed::add);
+
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+        instanceB.heartbeat();
+        int ownedByA = confirmed.size();
+        assertTrue(ownedByA < gateways.size());
+
+        // b dies, a takes over its gateways and polls them at once
+        clock.millis += 7000;
+        instanceA.heartbeat();
+        instanceA.heartbeat();
+        assertEquals(gateways.size(), confirmed.size());
+        assertEquals(Set.copyOf(gateways), Set.copyOf(confirmed));
+    }
+
+    @Test
+    void staleLeasesAreDeleted() throws IOException {
+
+        instanceA.heartbeat();
+        instanceB.heartbeat();
+
+        // a crashed instance left its lease, b expired only recently
+        Path crashed = coordinationDir.resolve("crashed.lease");
+        Files.writeString(crashed, Long.toString(clock.millis));
+        clock.millis += 7000;
+        instanceA.heartbeat();
+        assertTrue(Files.exists(crashed));
+        assertTrue(Files.exists(coordinationDir.resolve("b.lease")));
+
+        // expired for much longer than leaseTimeoutMillis
+        clock.millis += LeaseFileGatewayCoordinator.STALE_LEASE_FACTOR * 6000L;
+        instanceA.heartbeat();
+        assertFalse(Files.exists(crashed));
+        assertFalse(Files.exists(coordinationDir.resolve("b.lease")));
+        assertTrue(Files.exists(coordinationDir.resolve("a.lease")));
+
+        try (Stream<Path> files = Files.list(coordinationDir)) {
+            assertEquals(0, files.filter(file -> file.toString().endsWith(".stale")).count());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.rthillmann.solarmonitoring;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OpenDTUSimulatorTest {
+
+    OpenDTUSimulator simulator;
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        simulator = OpenDTUSimulator.start(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.stop();
+    }
+
+
+    private JsonObject get(String path) throws IOException, URISyntaxException {
+
+        try (Reader in = new InputStreamReader(new URI("http://" + simulator.address() + path).toURL().openStream())) {
+            return JsonParser.parseReader(in).getAsJsonObject();
+        }
+    }
+
+    @Test
+    void status() throws Exception {
+
+        JsonObject status = get("/api/livedata/status");
+
+        assertEquals(OpenDTUSimulator.SERIAL, status.getAsJsonArray("inverters").get(0).getAsJsonObject().get("serial").getAsString());
+        assertEquals(933, status.getAsJsonObject("total").getAsJsonObject("YieldDay").get("v").getAsInt());
+    }
+
+    @Test
+    void statusInverter() throws Exception {
+
+        JsonObject status = get("/api/livedata/status?inv=" + OpenDTUSimulator.SERIAL);
+        JsonObject dc = status.getAsJsonArray("inverters").get(0).getAsJsonObject().getAsJsonObject("DC");
+
+        assertEquals(465, dc.getAsJsonObject("0").getAsJsonObject("YieldDay").get("v").getAsInt());
+        assertEquals(468, dc.getAsJsonObject("1").getAsJsonObject("YieldDay").get("v").getAsInt());
+    }
+}
@@ -1,6 +1,72 @@
 package de.rthillmann.solarmonitoring;
 
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 class SolarMonitoringTest {
 
+    @Test
+    void parseCommandlineSingleServer() {
+
+        CmdLineParms cmdLineParms = SolarMonitoring.parseCommandline(new String[] { "192.168.1.1" });
+
+        assertEquals(List.of("192.168.1.1"), cmdLineParms.servers());
+        assertFalse(cmdLineParms.isCoordinated());
+        assertNull(cmdLineParms.instanceId());
+    }
+
+    @Test
+    void parseCommandlineCoordinated() {
+
+        CmdLineParms cmdLineParms = SolarMonitoring.parseCommandline(
+                new String[] { "--coordination-dir", "/mnt/shared", "192.168.1.1", "--instance-id", "host1", "192.168.1.2" });
+
+        assertEquals(List.of("192.168.1.1", "192.168.1.2"), cmdLineParms.servers());
+        assertTrue(cmdLineParms.isCoordinated());
+        assertEquals("/mnt/shared", cmdLineParms.coordinationDir());
+        assertEquals("host1", cmdLineParms.instanceId());
+    }
+
+    @Test
+    void parseCommandlineDefaultInstanceId() {
+
+        CmdLineParms cmdLineParms = SolarMonitoring.parseCommandline(
+                new String[] { "--coordination-dir", "/mnt/shared", "192.168.1.1" });
+
+        assertTrue(cmdLineParms.instanceId().endsWith("-" + ProcessHandle.current().pid()));
+    }
+
+    @Test
+    void parseCommandlineOptionWithoutValue() {
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SolarMonitoring.parseArgs(new String[] { "192.168.1.1", "--coordination-dir" }));
+        assertThrows(IllegalArgumentException.class,
+                () -> SolarMonitoring.parseArgs(new String[] { "192.168.1.1", "--instance-id" }));
+        assertThrows(IllegalArgumentException.class,
+                () -> SolarMonitoring.parseArgs(new String[] { "--instance-id", "--coordination-dir", "/mnt/shared", "192.168.1.1" }));
+    }
+
+    @Test
+    void parseCommandlineWithoutServer() {
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SolarMonitoring.parseArgs(new String[] { "--coordination-dir", "/mnt/shared" }));
+    }
+
+    @Test
+    void parseCommandlineSanitizesInstanceId() {
+
+        CmdLineParms cmdLineParms = SolarMonitoring.parseArgs(
+                new String[] { "--coordination-dir", "/mnt/shared", "--instance-id", "../x", "192.168.1.1" });
 
-}
\ No newline at end of file
+        assertEquals(".._x", cmdLineParms.instanceId());
+    }
+}
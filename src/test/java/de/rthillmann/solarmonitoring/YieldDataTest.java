@@ -4,10 +4,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class YieldDataTest {
 
@@ -83,8 +85,8 @@ class YieldDataTest {
 
 
 
-        DateTimeFormatter formatterReduced = DateTimeFormatter.ofPattern("YYYY-MM-dd");
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("YYYY-MM-dd HH:mm:ss");
+        DateTimeFormatter formatterReduced = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
         yieldData = new YieldData( nowWithoutDST, yieldDataTotal, yieldDataModule0, yieldDataModule1 );
 
@@ -116,6 +118,17 @@ class YieldDataTest {
         assertEquals( resultStringReduced, yieldData.toStringReduced());
     }
 
+    @Test
+    void toStringAtEndOfYear() {
+
+        // 2024-12-30 belongs to week 1 of the week-based year 2025
+        YieldData endOfYear = new YieldData(ZonedDateTime.of(2024, 12, 30, 23, 50, 0, 0, ZoneOffset.ofHours(1)),
+                yieldDataTotal, yieldDataModule0, yieldDataModule1);
+
+        assertTrue(endOfYear.toString().startsWith("2024-12-30 23:50:00 |"));
+        assertTrue(endOfYear.toStringReduced().startsWith("2024-12-30 |"));
+    }
+
     @Test
     void total() {
         assertEquals( yieldDataTotal, yieldData.total());
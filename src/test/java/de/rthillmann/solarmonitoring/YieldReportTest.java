@@ -0,0 +1,137 @@
+package de.rthillmann.solarmonitoring;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class YieldReportTest {
+
+    @TempDir
+    Path logDir;
+
+    @TempDir
+    Path outputDir;
+
+
+    @Test
+    void parseLineReduced() {
+
+        YieldReport.Day day = YieldReport.parseLine(
+                "2024-05-29 | Total:    354,101 kWh     3105 Wh | DC-0:    159,350 kWh     1555 Wh | DC-1:    194,751 kWh     1550 Wh |");
+
+        assertEquals(new YieldReport.Day("", LocalDate.of(2024, 5, 29), 354.101f, 3105, 1555, 1550, Float.NaN), day);
+    }
+
+    @Test
+    void parseLineWithServerAndPower() {
+
+        YieldReport.Day day = YieldReport.parseLine(
+                "192.168.1.1 | 2024-05-30 13:48:25 | Total:    355.034 kWh      933 Wh     51.1 W | DC-0:    159,815 kWh      465 Wh     26,7 W | DC-1:    195,219 kWh      468 Wh     27,0 W |");
+
+        assertEquals(new YieldReport.Day("192.168.1.1", LocalDate.of(2024, 5, 30), 355.034f, 933, 465, 468, 51.1f), day);
+    }
+
+    @Test
+    void parseLineInvalid() {
+
+        assertNull(YieldReport.parseLine("log-directory has been created!"));
+        assertNull(YieldReport.parseLine("2024-05-29 | Total: | DC-0: | DC-1: |"));
+    }
+
+    @Test
+    void generate() throws IOException {
+
+        Files.write(logDir.resolve(YieldReport.YIELD_DAY_LOG), List.of(
+                "2024-05-30 | Total:    355,000 kWh     3000 Wh | DC-0:    159,000 kWh     1000 Wh | DC-1:    196,000 kWh     2000 Wh |",
+                "2024-05-31 | Total:    356,000 kWh     1000 Wh | DC-0:    159,500 kWh      500 Wh | DC-1:    196,500 kWh      500 Wh |",
+                "2024-06-01 | Total:    358,000 kWh     2000 Wh | DC-0:    160,500 kWh     1000 Wh | DC-1:    197,500 kWh     1000 Wh |"));
+
+        // 2024-06-02 is missing in solar_yieldday.log and taken from the minute archive
+        Files.write(logDir.resolve("solar_power.2024-06-02.log"), List.of(
+                "2024-06-02 12:00:00 | Total:    358,500 kWh      500 Wh    300,0 W | DC-0:    160,700 kWh      200 Wh    150,0 W | DC-1:    197,800 kWh      300 Wh    150,0 W |",
+                "2024-06-02 18:00:00 | Total:    359,000 kWh     1000 Wh     20,0 W | DC-0:    161,000 kWh      500 Wh     10,0 W | DC-1:    198,000 kWh      500 Wh     10,0 W |"));
+
+        List<YieldReport.MonthReport> monthReports = new YieldReport(logDir, outputDir).generate();
+
+        assertEquals(2, monthReports.size());
+
+        assertEquals(List.of(
+                "server,period,days,totalKWh,yieldWh,dc0Wh,dc1Wh,dc0Share,dc1Share,bestDay,bestWh,worstDay,worstWh,peakW",
+                ",2024-05,2,356.000,4000,1500,2500,0.375,0.625,2024-05-30,3000,2024-05-31,1000,",
+                ",2024-06,2,359.000,3000,1500,1500,0.500,0.500,2024-06-01,2000,2024-06-02,1000,300.0"),
+                Files.readAllLines(outputDir.resolve(YieldReport.MONTHLY_CSV)));
+
+        assertEquals(List.of(
+                "server,period,days,totalKWh,yieldWh,dc0Wh,dc1Wh,dc0Share,dc1Share,bestDay,bestWh,worstDay,worstWh,peakW",
+                ",2024,4,359.000,7000,3000,4000,0.429,0.571,2024-05-30,3000,2024-05-31,1000,300.0"),
+                Files.readAllLines(outputDir.resolve(YieldReport.YEARLY_CSV)));
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(outputDir.resolve(YieldReport.DAYS_COLUMNAR)))) {
+
+            byte[] magic = new byte[YieldReport.COLUMNAR_MAGIC.length];
+            in.readFully(magic);
+            assertEquals(new String(YieldReport.COLUMNAR_MAGIC), new String(magic));
+            assertEquals(YieldReport.COLUMNAR_VERSION, in.readByte());
+
+            assertEquals(1, in.readInt());
+            assertEquals("", in.readUTF());
+
+            int rows = in.readInt();
+            assertEquals(4, rows);
+
+            for (int i = 0; i < rows; i++) assertEquals(0, in.readShort());
+            assertEquals(LocalDate.of(2024, 5, 30).toEpochDay(), in.readInt());
+        }
+    }
+
+    @Test
+    void columnarSortedByServerAndDate() throws IOException {
+
+        Files.write(logDir.resolve(YieldReport.YIELD_DAY_LOG), List.of(
+                "192.168.1.2 | 2024-05-31 | Total:    356,000 kWh     1000 Wh | DC-0:    159,500 kWh      500 Wh | DC-1:    196,500 kWh      500 Wh |",
+                "192.168.1.1 | 2024-06-01 | Total:    358,000 kWh     2000 Wh | DC-0:    160,500 kWh     1000 Wh | DC-1:    197,500 kWh     1000 Wh |",
+                "192.168.1.2 | 2024-06-01 | Total:    357,000 kWh     1000 Wh | DC-0:    160,000 kWh      500 Wh | DC-1:    197,000 kWh      500 Wh |",
+                "192.168.1.1 | 2024-05-31 | Total:    356,000 kWh     3000 Wh | DC-0:    159,000 kWh     1000 Wh | DC-1:    196,000 kWh     2000 Wh |",
+                "log-directory has been created! | stray line"));
+
+        new YieldReport(logDir, outputDir).generate();
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(outputDir.resolve(YieldReport.DAYS_COLUMNAR)))) {
+
+            in.readFully(new byte[YieldReport.COLUMNAR_MAGIC.length]);
+            in.readByte();
+
+            assertEquals(2, in.readInt());
+            assertEquals("192.168.1.1", in.readUTF());
+            assertEquals("192.168.1.2", in.readUTF());
+
+            assertEquals(4, in.readInt());
+            assertEquals(List.of(0, 0, 1, 1), List.of((int) in.readShort(), (int) in.readShort(), (int) in.readShort(), (int) in.readShort()));
+            assertEquals(List.of(LocalDate.of(2024, 5, 31).toEpochDay(), LocalDate.of(2024, 6, 1).toEpochDay(),
+                            LocalDate.of(2024, 5, 31).toEpochDay(), LocalDate.of(2024, 6, 1).toEpochDay()),
+                    List.of((long) in.readInt(), (long) in.readInt(), (long) in.readInt(), (long) in.readInt()));
+        }
+    }
+
+    @Test
+    void archiveDayFromFileName() throws IOException {
+
+        // older versions logged 2024-12-30 with the week-based year 2025
+        Files.write(logDir.resolve("solar_power.2024-12-30.log"), List.of(
+                "2025-12-30 12:00:00 | Total:    358,500 kWh      500 Wh    300,0 W | DC-0:    160,700 kWh      200 Wh    150,0 W | DC-1:    197,800 kWh      300 Wh    150,0 W |"));
+
+        List<YieldReport.MonthReport> monthReports = new YieldReport(logDir, outputDir).generate();
+
+        assertEquals(1, monthReports.size());
+        assertEquals(LocalDate.of(2024, 12, 30), monthReports.get(0).days().get(0).date());
+    }
+}